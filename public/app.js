@@ -147,7 +147,8 @@ function paint(facelets){
 
 async function postText(url, text){
   try {
-    const res = await fetch(url, {method:"POST", body: text});
+    // The rubik_ui cookie set with the page goes along and marks this as UI traffic.
+    const res = await fetch(url, {method:"POST", body: text, credentials: "same-origin"});
     const contentType = res.headers.get("content-type");
     
     if (!contentType || !contentType.includes("application/json")) {
@@ -235,6 +236,22 @@ async function animateStep(move, nextFacelets){
 
 function sleep(ms){ return new Promise(r=>setTimeout(r, ms)); }
 
+// Facelet position alphabet used by the server's delta traces (/api/solve?trace=delta).
+const DELTA_INDEX = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQR";
+
+// Rebuild the full per-move facelet frames from the start state and the deltas.
+function framesFromDeltas(start, deltas) {
+  const frames = [start];
+  let cur = start.split("");
+  for (const d of deltas) {
+    for (let i = 0; i + 1 < d.length; i += 2) {
+      cur[DELTA_INDEX.indexOf(d[i])] = d[i + 1];
+    }
+    frames.push(cur.join(""));
+  }
+  return frames;
+}
+
 function parseMovesString(solutionText) {
   return String(solutionText || '')
     .trim()
@@ -294,7 +311,7 @@ solveBtn.addEventListener("click", async ()=>{
       cube3d.updateFromFacelets(current);
     }
     
-    const data = await postText("/api/solve", inputEl.value);
+    const data = await postText("/api/solve?trace=delta", inputEl.value);
     if (token !== animToken) return;
 
     paint(data.facelets);
@@ -302,7 +319,8 @@ solveBtn.addEventListener("click", async ()=>{
     setSolution(sol);
 
     let moves = Array.isArray(data.moves) ? data.moves : [];
-    const trace = Array.isArray(data.trace) ? data.trace : [];
+    const trace = Array.isArray(data.trace) ? data.trace
+      : Array.isArray(data.deltas) ? framesFromDeltas(data.facelets, data.deltas) : [];
     if (!moves.length && sol && sol !== "—") moves = parseMovesString(sol);
 
     setMovesCount(`Moves: ${moves.length || "—"}`);
@@ -0,0 +1,335 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits a large file of cubes (one per line: facelets, moves or JSON) into fixed-size
+ * chunks and solves them on a set of worker JVMs, each a {@code Solver --serve} daemon
+ * fed over its stdin/stdout pipes. Workers load the tables from one shared cache file
+ * (see {@link TableCache}), which the coordinator builds before starting them.
+ *
+ *   java -cp bin BatchCoordinator <input> <output> [workers] [chunkSize]
+ *
+ * Each finished chunk is written to {@code <output>.parts/} and recorded in
+ * {@code <output>.checkpoint}; rerunning the same command after a crash skips recorded
+ * chunks. The checkpoint names the input's path, size and modification time, and a run
+ * against any other input refuses to resume from it. A worker that dies, or goes 30 s
+ * without a reply, is restarted and its chunk retried. When every chunk is done the
+ * parts are joined into the output in input order (one JSON result per line, "id"
+ * being the 0-based input line) and the checkpoint is removed.
+ */
+public class BatchCoordinator {
+    private static final int MAX_ATTEMPTS = 3;
+    // Longest wait for a worker's next reply: the default 5 s search deadline, plus room for
+    // a fresh worker to load its tables. A worker that stays silent longer is treated as dead.
+    private static final long REPLY_TIMEOUT_MS = 30_000;
+
+    private final Path input;
+    private final Path output;
+    private final Path partsDir;
+    private final Path checkpoint;
+    private final int workers;
+    private final int chunkSize;
+    private final String tables;
+
+    private final LinkedBlockingDeque<Chunk> queue = new LinkedBlockingDeque<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    // Read ahead at most a couple of chunks per worker so memory stays bounded.
+    private final Semaphore ahead;
+    private volatile boolean inputDone;
+    private volatile String failure;
+
+    public BatchCoordinator(Path input, Path output, int workers, int chunkSize, String tables) {
+        this.input = input;
+        this.output = output;
+        this.partsDir = Paths.get(output + ".parts");
+        this.checkpoint = Paths.get(output + ".checkpoint");
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+        this.tables = tables;
+        this.ahead = new Semaphore(workers * 2);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java BatchCoordinator <input> <output> [workers] [chunkSize]");
+            System.exit(1);
+        }
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int chunkSize = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        String tables = TableCache.sharedPath();
+        System.setProperty("rubik.tables", tables);
+        System.exit(new BatchCoordinator(Paths.get(args[0]), Paths.get(args[1]), workers, chunkSize, tables).run());
+    }
+
+    private static final class Chunk {
+        final int index;
+        final long firstLine;
+        final List<String> lines;
+        int attempts;
+
+        Chunk(int index, long firstLine, List<String> lines) {
+            this.index = index;
+            this.firstLine = firstLine;
+            this.lines = lines;
+        }
+    }
+
+    public int run() throws IOException, InterruptedException {
+        long t0 = System.currentTimeMillis();
+        TableCache.prepare();
+        Files.createDirectories(partsDir);
+        Set<Integer> done = readCheckpoint();
+        if (!done.isEmpty()) System.out.println("Resuming: " + done.size() + " chunks already done");
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            Thread t = new Thread(this::workerLoop, "coordinator-worker-" + i);
+            t.start();
+            threads.add(t);
+        }
+
+        int chunks = 0;
+        long lineNo = 0;
+        try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            List<String> lines = new ArrayList<>(chunkSize);
+            String line;
+            long first = 0;
+            while (failure == null) {
+                line = in.readLine();
+                if (line != null) {
+                    lines.add(line);
+                    lineNo++;
+                }
+                if (lines.size() == chunkSize || (line == null && !lines.isEmpty())) {
+                    int index = chunks++;
+                    if (!done.contains(index)) {
+                        while (failure == null && !ahead.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                        }
+                        if (failure != null) break;
+                        pending.incrementAndGet();
+                        queue.add(new Chunk(index, first, lines));
+                    }
+                    lines = new ArrayList<>(chunkSize);
+                    first = lineNo;
+                }
+                if (line == null) break;
+            }
+        }
+        inputDone = true;
+        for (Thread t : threads) t.join();
+        if (failure != null) {
+            System.err.println("Batch stopped: " + failure + " (rerun to resume)");
+            return 1;
+        }
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+            for (int i = 0; i < chunks; i++) Files.copy(part(i), out);
+        }
+        for (int i = 0; i < chunks; i++) Files.deleteIfExists(part(i));
+        Files.deleteIfExists(partsDir);
+        Files.deleteIfExists(checkpoint);
+        double secs = (System.currentTimeMillis() - t0) / 1000.0;
+        System.out.printf("%d cubes in %d chunks on %d workers: %.2f s, %.1f cubes/s%n",
+                lineNo, chunks, workers, secs, lineNo / secs);
+        return 0;
+    }
+
+    private void workerLoop() {
+        Worker worker = null;
+        try {
+            while (failure == null) {
+                Chunk c = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (c == null) {
+                    if (inputDone && pending.get() == 0) break;
+                    continue;
+                }
+                try {
+                    if (worker == null) worker = new Worker(tables);
+                    writePart(c, worker.solve(c));
+                    recordCheckpoint(c.index);
+                    ahead.release();
+                    pending.decrementAndGet();
+                } catch (IOException e) {
+                    if (worker != null) worker.destroy();
+                    worker = null;
+                    if (++c.attempts >= MAX_ATTEMPTS) {
+                        failure = "chunk " + c.index + " failed " + c.attempts + " times: " + e.getMessage();
+                    } else {
+                        System.err.println("Worker failed on chunk " + c.index + " (" + e.getMessage() + "), retrying");
+                        queue.addFirst(c);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (worker != null) worker.close();
+        }
+    }
+
+    private Path part(int index) {
+        return partsDir.resolve(String.format("chunk-%06d.ndjson", index));
+    }
+
+    private void writePart(Chunk c, String[] results) throws IOException {
+        Path tmp = partsDir.resolve(part(c.index).getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (String r : results) {
+                w.write(r);
+                w.newLine();
+            }
+        }
+        Files.move(tmp, part(c.index), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private synchronized void recordCheckpoint(int index) throws IOException {
+        Files.writeString(checkpoint, index + "\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                StandardOpenOption.DSYNC);
+    }
+
+    // A chunk counts as done only if its part file survived too. The header line pins the
+    // chunk size and the input file, since chunk numbers mean nothing under either changed.
+    private Set<Integer> readCheckpoint() throws IOException {
+        Set<Integer> done = new HashSet<>();
+        String header = "chunkSize=" + chunkSize + " size=" + Files.size(input)
+                + " mtime=" + Files.getLastModifiedTime(input).toMillis() + " input=" + input.toAbsolutePath().normalize();
+        if (!Files.exists(checkpoint)) {
+            Files.writeString(checkpoint, header + "\n");
+            return done;
+        }
+        List<String> lines = Files.readAllLines(checkpoint);
+        if (lines.isEmpty() || !lines.get(0).equals(header))
+            throw new IOException(checkpoint + " was written for a different input file or chunk size"
+                    + " (expected \"" + header + "\"); delete it to start over");
+        for (String line : lines.subList(1, lines.size())) {
+            try {
+                int index = Integer.parseInt(line.trim());
+                if (Files.exists(part(index))) done.add(index);
+            } catch (NumberFormatException ignored) {
+                // Torn last line from a crash mid-write.
+            }
+        }
+        return done;
+    }
+
+    /** One {@code Solver --serve} child process. */
+    private static final class Worker implements Closeable {
+        // Queued by the reader thread once the worker's stdout ends.
+        private static final String END = new String("end of output");
+
+        private final Process process;
+        private final BufferedWriter in;
+        private final LinkedBlockingQueue<String> replies = new LinkedBlockingQueue<>();
+
+        Worker(String tables) throws IOException {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            process = new ProcessBuilder(java, "-Drubik.tables=" + tables,
+                    "-cp", System.getProperty("java.class.path"), "Solver", "--serve", "1")
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+            in = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            // Replies are read on their own thread so solve can give up on a worker that
+            // is alive but silent instead of blocking in readLine forever.
+            Thread reader = new Thread(() -> {
+                try {
+                    String line;
+                    while ((line = out.readLine()) != null) replies.add(line);
+                } catch (IOException e) {
+                    // Destroyed or crashed; END below tells solve.
+                } finally {
+                    replies.add(END);
+                }
+            }, "coordinator-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /** Sends the chunk and returns one result line per input line, in input order. */
+        String[] solve(Chunk c) throws IOException {
+            int n = c.lines.size();
+            String[] results = new String[n];
+            // Lines are parsed here, so a bad one is answered without a round trip to the worker.
+            String[] cubes = new String[n];
+            int expected = 0;
+            for (int i = 0; i < n; i++) {
+                String line = c.lines.get(i);
+                if (line.isBlank()) {
+                    results[i] = error(c.firstLine + i, "Empty line");
+                    continue;
+                }
+                try {
+                    cubes[i] = CubeInputUtil.parseRequestLine(line);
+                    expected++;
+                } catch (IllegalArgumentException e) {
+                    results[i] = error(c.firstLine + i, e.getMessage());
+                }
+            }
+            // Requests go out on their own thread: the daemon stops reading once its window
+            // is full, so writing everything before reading could deadlock.
+            IOException[] sendError = new IOException[1];
+            Thread sender = new Thread(() -> {
+                try {
+                    for (int i = 0; i < n; i++) {
+                        if (cubes[i] == null) continue;
+                        // The id is the global line number, which the reply carries back.
+                        in.write("{\"id\":" + (c.firstLine + i) + ",\"input\":\"" + cubes[i] + "\"}");
+                        in.newLine();
+                    }
+                    in.flush();
+                } catch (IOException e) {
+                    sendError[0] = e;
+                }
+            }, "coordinator-sender");
+            sender.setDaemon(true);
+            sender.start();
+            for (int got = 0; got < expected; got++) {
+                String line;
+                try {
+                    line = replies.poll(REPLY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted");
+                }
+                if (line == null) throw new IOException("no reply for " + REPLY_TIMEOUT_MS + " ms");
+                if (line == END) throw new IOException(sendError[0] != null ? sendError[0].getMessage() : "worker exited");
+                long id = JsonUtil.longField(line, "id", -1);
+                int slot = (int) (id - c.firstLine);
+                if (slot < 0 || slot >= n || results[slot] != null) throw new IOException("unexpected reply " + line);
+                results[slot] = line;
+            }
+            try {
+                sender.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            }
+            return results;
+        }
+
+        private static String error(long id, String message) {
+            return "{\"id\":" + id + ",\"error\":\"" + JsonUtil.esc(message) + "\"}";
+        }
+
+        void destroy() {
+            process.destroyForcibly();
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+                process.waitFor(5, TimeUnit.SECONDS);
+            } catch (IOException e) {
+                // Already gone.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            process.destroyForcibly();
+        }
+    }
+}
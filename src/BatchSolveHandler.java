@@ -0,0 +1,195 @@
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * POST /api/solve/batch. The body is NDJSON or plain newline-separated cubes (facelet
+ * strings or move sequences; JSON lines may use "facelets", "cube" or "input"). Lines are
+ * read as they arrive, solved on the shared pool with a bounded number in flight, and
+ * each result is streamed back as one NDJSON line tagged with the input's index, in
+ * completion order. A final {"done":true,...} line closes the batch.
+ *
+ * Memory stays flat whatever the batch size: at most {@code inFlight} cubes are held at
+ * once and lines longer than {@code MAX_LINE} are rejected without being buffered. When
+ * the bulk queue is full the reader waits for room, up to the batch deadline. Once a
+ * write to the client fails, no further lines are read and queued items are skipped.
+ */
+public class BatchSolveHandler implements HttpHandler {
+    private static final int MAX_LINE = 4096;
+    private static final int MAX_DEPTH = 21;
+
+    private final SolveScheduler solveExecutor;
+    private final int inFlight;
+    private final long defaultItemMs;
+    private final long maxBatchMs;
+
+    public BatchSolveHandler(SolveScheduler solveExecutor, int inFlight, long defaultItemMs, long maxBatchMs) {
+        this.solveExecutor = solveExecutor;
+        this.inFlight = inFlight;
+        this.defaultItemMs = defaultItemMs;
+        this.maxBatchMs = maxBatchMs;
+    }
+
+    @Override
+    public void handle(HttpExchange ex) throws IOException {
+        if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
+            RubikWebServer.sendError(ex, 405, "Use POST");
+            return;
+        }
+        long itemMs, batchMs;
+        try {
+            itemMs = Math.max(1, Math.min(Long.parseLong(RubikWebServer.queryParam(ex, "itemMs",
+                    String.valueOf(defaultItemMs))), defaultItemMs));
+            batchMs = Math.max(1, Math.min(Long.parseLong(RubikWebServer.queryParam(ex, "deadlineMs",
+                    String.valueOf(maxBatchMs))), maxBatchMs));
+        } catch (NumberFormatException e) {
+            RubikWebServer.sendError(ex, 400, "itemMs and deadlineMs must be integers");
+            return;
+        }
+
+        long t0 = System.currentTimeMillis();
+        long batchDeadline = t0 + batchMs;
+        ex.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+        ex.sendResponseHeaders(200, 0);
+        Semaphore slots = new Semaphore(inFlight);
+        AtomicInteger errors = new AtomicInteger();
+        AtomicBoolean gone = new AtomicBoolean();
+        int count = 0;
+        try (Reader in = new InputStreamReader(ex.getRequestBody(), StandardCharsets.UTF_8);
+             OutputStream out = ex.getResponseBody()) {
+            Lines lines = new Lines(new BufferedReader(in, 8192));
+            String line;
+            while (!gone.get() && (line = lines.next()) != null) {
+                if (line.isBlank() && !lines.tooLong()) continue;
+                int index = count++;
+                if (lines.tooLong()) {
+                    errors.incrementAndGet();
+                    writeLine(out, w -> error(w, index, "Line exceeds " + MAX_LINE + " characters"));
+                    continue;
+                }
+                if (System.currentTimeMillis() >= batchDeadline) {
+                    errors.incrementAndGet();
+                    writeLine(out, w -> error(w, index, "Batch deadline exceeded"));
+                    continue;
+                }
+                slots.acquire();
+                String item = line;
+                Runnable task = () -> {
+                    try {
+                        if (!gone.get())
+                            solveOne(out, index, item, Math.min(System.currentTimeMillis() + itemMs, batchDeadline),
+                                    errors, gone);
+                    } finally {
+                        slots.release();
+                    }
+                };
+                // The bulk queue is shared with other clients, so wait for room rather than fail the item.
+                if (!solveExecutor.offer(task, SolveScheduler.UNKNOWN_COST, SolveScheduler.TrafficClass.BULK,
+                        batchDeadline - System.currentTimeMillis())) {
+                    slots.release();
+                    errors.incrementAndGet();
+                    writeLine(out, w -> error(w, index, "Batch deadline exceeded"));
+                }
+            }
+            slots.acquire(inFlight);
+            if (gone.get()) return;
+            int total = count;
+            writeLine(out, w -> w.beginObject()
+                .field("done", true)
+                .field("count", total)
+                .field("errors", errors.get())
+                .field("elapsedMs", System.currentTimeMillis() - t0)
+                .endObject());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // Client disconnected; items still queued see the flag and are skipped.
+            gone.set(true);
+        }
+    }
+
+    private void solveOne(OutputStream out, int index, String item, long deadline, AtomicInteger errors,
+            AtomicBoolean gone) {
+        try {
+            String facelets = CubeInputUtil.parseRequestLine(item);
+            if (System.currentTimeMillis() >= deadline) {
+                errors.incrementAndGet();
+                writeLine(out, w -> error(w, index, "Batch deadline exceeded"));
+                return;
+            }
+            SolveResult result = new Search().solveBy(facelets, MAX_DEPTH, deadline);
+            if (!result.ok()) {
+                errors.incrementAndGet();
+                writeLine(out, w -> error(w, index, result.status.error()));
+                return;
+            }
+            writeLine(out, w -> w.beginObject()
+                .field("index", index)
+                .field("facelets", facelets)
+                .field("solution", result.text())
+                .field("length", result.length)
+                .endObject());
+        } catch (IllegalArgumentException e) {
+            errors.incrementAndGet();
+            try {
+                writeLine(out, w -> error(w, index, e.getMessage()));
+            } catch (IOException ignored) {
+                gone.set(true);
+            }
+        } catch (IOException e) {
+            gone.set(true);
+        }
+    }
+
+    private static void error(JsonWriter w, int index, String message) throws IOException {
+        w.beginObject().field("index", index).field("error", message).endObject();
+    }
+
+    private static void writeLine(OutputStream out, JsonWriter.Body body) throws IOException {
+        JsonWriter w = JsonWriter.acquire();
+        try {
+            body.writeTo(w.reset(null));
+            synchronized (out) {
+                out.write(w.buffer(), 0, w.size());
+                out.write('\n');
+                out.flush();
+            }
+        } finally {
+            JsonWriter.release(w);
+        }
+    }
+
+    /**
+     * Line reader that refuses to buffer more than MAX_LINE characters of one line; the
+     * overlong line is returned truncated with {@link #tooLong()} set.
+     */
+    private static final class Lines {
+        private final Reader in;
+        private final StringBuilder sb = new StringBuilder(128);
+        private boolean overflow;
+
+        Lines(Reader in) {
+            this.in = in;
+        }
+
+        String next() throws IOException {
+            sb.setLength(0);
+            overflow = false;
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') return sb.toString();
+                if (c == '\r') continue;
+                if (sb.length() < MAX_LINE) sb.append((char) c);
+                else overflow = true;
+            }
+            return sb.length() == 0 && !overflow ? null : sb.toString();
+        }
+
+        boolean tooLong() {
+            return overflow;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Offline benchmarks for the solver engine and the code around it, runnable with plain
+ * javac/java:
+ *
+ *   java -cp bin Benchmark [--quick] [--only=prefix] [--json=out.json]
+ *                          [--baseline=base.json] [--threshold=20] [--metric=p50|p90|p99|mean]
+ *
+ * Each benchmark is warmed up for a while, then every operation is timed on its own and
+ * reported as mean and percentiles. --json writes the results for machines; with
+ * --baseline the run exits with status 1 when a benchmark's metric is more than
+ * threshold percent slower than in the baseline file (an earlier --json output).
+ *
+ * Table build time can only be measured once per JVM and only when the tables are built,
+ * so run without TABLE_CACHE to time the build.
+ */
+public class Benchmark {
+    private static final int RANDOM_STATES = 200;
+    // The legacy solution(..., 5, ...) timeout, which counts 1024 ms to the second.
+    private static final long SOLVE_TIMEOUT_MS = 5 << 10;
+
+    private static long warmupMs = 2000;
+    private static long measureMs = 5000;
+    // Results fold into this so the JIT cannot drop the work being timed.
+    private static volatile long blackhole;
+
+    private interface Op {
+        long run(int i);
+    }
+
+    private static final class Result {
+        final String name;
+        final LatencyStats stats = new LatencyStats();
+        String note;
+
+        Result(String name) {
+            this.name = name;
+        }
+
+        long nanos(double p) {
+            return Math.round(stats.percentileMillis(p) * 1e6);
+        }
+
+        long metric(String metric) {
+            switch (metric) {
+                case "mean": return Math.round(stats.meanMillis() * 1e6);
+                case "p90": return nanos(90);
+                case "p99": return nanos(99);
+                default: return nanos(50);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> opts = new LinkedHashMap<>();
+        for (String a : args) {
+            if (a.equals("--quick")) opts.put("quick", "1");
+            else if (a.startsWith("--") && a.contains("=")) opts.put(a.substring(2, a.indexOf('=')), a.substring(a.indexOf('=') + 1));
+            else {
+                System.err.println("Usage: java Benchmark [--quick] [--only=prefix] [--json=out.json]"
+                        + " [--baseline=base.json] [--threshold=20] [--metric=p50|p90|p99|mean]");
+                System.exit(2);
+            }
+        }
+        if (opts.containsKey("quick")) {
+            warmupMs = 300;
+            measureMs = 1000;
+        }
+        String only = opts.getOrDefault("only", "");
+        String metric = opts.getOrDefault("metric", "p50");
+        double threshold = Double.parseDouble(opts.getOrDefault("threshold", "20"));
+
+        List<Result> results = new ArrayList<>();
+        Result tables = new Result("tables.init");
+        TableCache.prepare();
+        tables.stats.record(TableCache.initNanos());
+        tables.note = TableCache.loadedFromFile() ? "loaded from " + TableCache.path() : "built";
+        if ("tables.init".startsWith(only)) results.add(tables);
+        report(tables);
+
+        List<String> corpus = corpus(Paths.get("testcases"));
+        List<String> random = Workloads.randomStates(RANDOM_STATES);
+        List<String> nets = Workloads.nets(Paths.get("testcases"));
+        List<String> scrambles = Workloads.randomScrambles(RANDOM_STATES);
+        List<List<String>> solutions = new ArrayList<>();
+        List<List<String>> traces = new ArrayList<>();
+        for (String f : corpus) {
+            solutions.add(solve(f).moveList());
+            traces.add(CubeTraceUtil.trace(f, solutions.get(solutions.size() - 1)));
+        }
+
+        run(results, only, "solve.testcases", i -> solve(corpus.get(i % corpus.size())).length);
+        run(results, only, "solve.random", i -> solve(random.get(i % random.size())).length);
+        run(results, only, "trace.full", i -> {
+            int k = i % corpus.size();
+            return CubeTraceUtil.trace(corpus.get(k), solutions.get(k)).size();
+        });
+        run(results, only, "trace.delta", i -> {
+            int k = i % corpus.size();
+            return CubeTraceUtil.deltas(corpus.get(k), solutions.get(k)).size();
+        });
+        RandomCube generator = new RandomCube(Workloads.SEED);
+        run(results, only, "random.state", i -> generator.nextFacelets().length());
+        run(results, only, "parse.moves", i -> CubeInputUtil.parseToFacelets(scrambles.get(i % scrambles.size())).length());
+        run(results, only, "parse.net", i -> CubeInputUtil.parseToFacelets(nets.get(i % nets.size())).length());
+        OutputStream discard = OutputStream.nullOutputStream();
+        run(results, only, "json.solveResponse", i -> {
+            int k = i % corpus.size();
+            return writeSolveResponse(corpus.get(k), solutions.get(k), traces.get(k), discard);
+        });
+
+        if (opts.containsKey("json")) {
+            writeJson(Paths.get(opts.get("json")), results);
+            System.err.println("Wrote " + opts.get("json"));
+        }
+        if (opts.containsKey("baseline")) {
+            int regressions = compare(Files.readString(Paths.get(opts.get("baseline"))), results, metric, threshold);
+            if (regressions > 0) {
+                System.err.println(regressions + " benchmark(s) regressed by more than " + threshold + "% on " + metric);
+                System.exit(1);
+            }
+            System.err.println("No regressions beyond " + threshold + "% on " + metric);
+        }
+    }
+
+    private static void run(List<Result> results, String only, String name, Op op) {
+        if (!name.startsWith(only)) return;
+        long sink = 0;
+        int i = 0;
+        long end = System.nanoTime() + warmupMs * 1_000_000;
+        while (System.nanoTime() < end) sink += op.run(i++);
+        Result r = new Result(name);
+        end = System.nanoTime() + measureMs * 1_000_000;
+        long t = System.nanoTime();
+        while (t < end) {
+            sink += op.run(i++);
+            long now = System.nanoTime();
+            r.stats.record(now - t);
+            t = now;
+        }
+        blackhole += sink;
+        results.add(r);
+        report(r);
+    }
+
+    // Microseconds: most of these operations take well under a millisecond.
+    private static void report(Result r) {
+        System.err.printf("%-20s n=%-8d mean=%10.1fus p50=%10.1fus p90=%10.1fus p99=%10.1fus max=%10.1fus%s%n",
+                r.name, r.stats.count(), r.metric("mean") / 1e3, r.nanos(50) / 1e3, r.nanos(90) / 1e3,
+                r.nanos(99) / 1e3, r.nanos(100) / 1e3, r.note != null ? " (" + r.note + ")" : "");
+    }
+
+    // The /api/solve response body, with the trace computed beforehand so only writing is timed.
+    private static long writeSolveResponse(String facelets, List<String> moves, List<String> trace, OutputStream out) {
+        JsonWriter w = JsonWriter.acquire();
+        try {
+            w.reset(() -> out);
+            w.beginObject()
+                .field("facelets", facelets)
+                .field("solution", String.join(" ", moves))
+                .field("moves", moves)
+                .field("length", moves.size())
+                .field("trace", trace)
+                .endObject();
+            long size = w.size();
+            w.finish();
+            return size;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            JsonWriter.release(w);
+        }
+    }
+
+    private static void writeJson(Path file, List<Result> results) throws IOException {
+        JsonWriter.writeFile(file, w -> {
+            w.beginObject()
+                .field("java", System.getProperty("java.version"))
+                .field("cpus", Runtime.getRuntime().availableProcessors())
+                .field("warmupMs", warmupMs)
+                .field("measureMs", measureMs)
+                .name("benchmarks").beginArray();
+            for (Result r : results) {
+                w.beginObject()
+                    .field("name", r.name)
+                    .field("ops", r.stats.count())
+                    .field("meanNs", r.metric("mean"))
+                    .field("p50Ns", r.nanos(50))
+                    .field("p90Ns", r.nanos(90))
+                    .field("p99Ns", r.nanos(99))
+                    .field("maxNs", r.nanos(100));
+                if (r.note != null) w.field("note", r.note);
+                w.endObject();
+            }
+            w.endArray().endObject();
+        });
+    }
+
+    // Benchmarks missing from either side are skipped; tables.init only compares like with like.
+    private static int compare(String baseline, List<Result> results, String metric, double threshold) {
+        int regressions = 0;
+        for (Result r : results) {
+            int at = baseline.indexOf("{\"name\":\"" + r.name + "\"");
+            if (at < 0) continue;
+            String entry = baseline.substring(at);
+            long before = JsonUtil.longField(entry, metric + "Ns", -1);
+            if (before <= 0) continue;
+            if (r.note != null && !r.note.equals(JsonUtil.stringField(entry, "note"))) continue;
+            long now = r.metric(metric);
+            double change = 100.0 * (now - before) / before;
+            boolean regressed = change > threshold;
+            if (regressed) regressions++;
+            System.err.printf("%-20s %s %,d ns -> %,d ns (%+.1f%%)%s%n", r.name, metric, before, now, change,
+                    regressed ? "  REGRESSION" : "");
+        }
+        return regressions;
+    }
+
+    private static List<String> corpus(Path dir) throws IOException {
+        List<String> cubes = new ArrayList<>();
+        for (String net : Workloads.nets(dir)) cubes.add(CubeInputUtil.parseToFacelets(net));
+        if (cubes.isEmpty()) cubes.addAll(Workloads.randomStates(20));
+        return cubes;
+    }
+
+    private static SolveResult solve(String facelets) {
+        return new Search().solveBy(facelets, 21, System.currentTimeMillis() + SOLVE_TIMEOUT_MS);
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.*;
+
+/**
+ * Wire format of the binary solve listener. All integers are big-endian and every
+ * frame starts with a u32 length that counts the bytes after it.
+ *
+ * Request:  u32 length | u32 id | u8 maxDepth (0 = default, at most 30) | u16 timeoutMs (0 = default)
+ *           | u16 corner permutation | u16 twist | u32 edge permutation | u16 flip
+ * Cancel:   u32 length (4) | u32 id
+ * Response: u32 length | u32 id | u8 status | u8 count | count move codes
+ *
+ * A cancel frame stops the search of an earlier request on the same connection; that
+ * request is still answered, with status 9 unless it finished first. A cancel for an id
+ * that is not running is ignored.
+ *
+ * The cube is packed as its full cubie coordinates (CubieCube.getURFtoDLB, getTwist,
+ * getURtoBR, getFlip). A move code is 3 * axis + power - 1 with axes in URFDLB order,
+ * the same numbering {@link SolveResult} uses. Status 0 is success, 1-9 are the
+ * {@link SolveResult.Status} codes, {@link #STATUS_BAD_REQUEST} means a coordinate or
+ * maxDepth was out of range, and {@link #STATUS_BUSY} means the server had no room to
+ * queue the request.
+ */
+public final class BinaryProtocol {
+    static final int REQUEST_BODY = 4 + 1 + 2 + 10;
+    static final int CANCEL_BODY = 4;
+    static final int MAX_FRAME = 1024;
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_BAD_REQUEST = 253;
+    public static final int STATUS_BUSY = 254;
+
+    private BinaryProtocol() {}
+
+    public static final class Request {
+        public final int id;
+        public final int maxDepth;
+        public final int timeoutMs;
+        public final int cornerPerm;
+        public final int twist;
+        public final int edgePerm;
+        public final int flip;
+        /** Set for a cancel frame, which carries only the id. */
+        public final boolean cancel;
+
+        public Request(int id, int maxDepth, int timeoutMs, int cornerPerm, int twist, int edgePerm, int flip) {
+            this(id, maxDepth, timeoutMs, cornerPerm, twist, edgePerm, flip, false);
+        }
+
+        private Request(int id, int maxDepth, int timeoutMs, int cornerPerm, int twist, int edgePerm, int flip,
+                boolean cancel) {
+            this.id = id;
+            this.maxDepth = maxDepth;
+            this.timeoutMs = timeoutMs;
+            this.cornerPerm = cornerPerm;
+            this.twist = twist;
+            this.edgePerm = edgePerm;
+            this.flip = flip;
+            this.cancel = cancel;
+        }
+
+        /** A cancel frame for the request with this id. */
+        public static Request cancel(int id) {
+            return new Request(id, 0, 0, 0, 0, 0, 0, true);
+        }
+
+        public static Request of(int id, int maxDepth, int timeoutMs, CubieCube cc) {
+            return new Request(id, maxDepth, timeoutMs, cc.getURFtoDLB(), cc.getTwist(), cc.getURtoBR(), cc.getFlip());
+        }
+
+        /** Rebuilds the cube, or returns null when a coordinate is out of range. */
+        public CubieCube toCubieCube() {
+            if (cornerPerm < 0 || cornerPerm >= CoordCube.N_URFtoDLB || twist >= CoordCube.N_TWIST
+                    || edgePerm < 0 || edgePerm >= CoordCube.N_URtoBR || flip >= CoordCube.N_FLIP)
+                return null;
+            CubieCube cc = new CubieCube();
+            cc.setURFtoDLB(cornerPerm);
+            cc.setTwist((short) twist);
+            cc.setURtoBR(edgePerm);
+            cc.setFlip((short) flip);
+            return cc;
+        }
+    }
+
+    public static final class Response {
+        public final int id;
+        public final int status;
+        public final byte[] moves;
+
+        public Response(int id, int status, byte[] moves) {
+            this.id = id;
+            this.status = status;
+            this.moves = moves;
+        }
+    }
+
+    public static void writeRequest(DataOutputStream out, Request r) throws IOException {
+        if (r.cancel) {
+            out.writeInt(CANCEL_BODY);
+            out.writeInt(r.id);
+            return;
+        }
+        out.writeInt(REQUEST_BODY);
+        out.writeInt(r.id);
+        out.writeByte(r.maxDepth);
+        out.writeShort(r.timeoutMs);
+        out.writeShort(r.cornerPerm);
+        out.writeShort(r.twist);
+        out.writeInt(r.edgePerm);
+        out.writeShort(r.flip);
+    }
+
+    /** Returns null on a clean end of stream between frames. */
+    public static Request readRequest(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length == CANCEL_BODY) return Request.cancel(in.readInt());
+        if (length < REQUEST_BODY || length > MAX_FRAME) throw new IOException("Bad frame length " + length);
+        Request r = new Request(in.readInt(), in.readUnsignedByte(), in.readUnsignedShort(),
+                in.readUnsignedShort(), in.readUnsignedShort(), in.readInt(), in.readUnsignedShort());
+        in.skipNBytes(length - REQUEST_BODY);
+        return r;
+    }
+
+    public static void writeResponse(DataOutputStream out, Response r) throws IOException {
+        int n = r.moves == null ? 0 : r.moves.length;
+        out.writeInt(4 + 1 + 1 + n);
+        out.writeInt(r.id);
+        out.writeByte(r.status);
+        out.writeByte(n);
+        if (n > 0) out.write(r.moves, 0, n);
+    }
+
+    /** Returns null on a clean end of stream between frames. */
+    public static Response readResponse(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 6 || length > MAX_FRAME) throw new IOException("Bad frame length " + length);
+        int id = in.readInt();
+        int status = in.readUnsignedByte();
+        int n = in.readUnsignedByte();
+        // A move count past the frame's end would desynchronise every frame after it.
+        if (length < 6 + n) throw new IOException("Frame length " + length + " too short for " + n + " moves");
+        byte[] moves = new byte[n];
+        in.readFully(moves);
+        in.skipNBytes(length - 6 - n);
+        return new Response(id, status, moves);
+    }
+}
@@ -0,0 +1,268 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference client for {@link BinarySolveServer}. One connection carries any number of
+ * pipelined requests; a reader thread completes each request's future when its
+ * response arrives.
+ *
+ * Run as a throughput test against a running server:
+ *   java -cp bin BinarySolveClient [host] [port] [requests] [window]
+ * It cycles through the testcases/ nets, checks every returned solution actually solves
+ * its cube, and prints requests per second.
+ *
+ * Run with --check it needs no server: see {@link #check()}.
+ */
+public class BinarySolveClient implements Closeable {
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final ConcurrentHashMap<Integer, CompletableFuture<BinaryProtocol.Response>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private volatile boolean closed;
+
+    public BinarySolveClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Thread reader = new Thread(this::readLoop, "binary-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends a request without waiting; call {@link #flush()} to push queued requests out.
+     * Cancelling the returned future sends a cancel frame, so the server stops the search.
+     */
+    public CompletableFuture<BinaryProtocol.Response> send(CubieCube cube, int maxDepth, int timeoutMs) throws IOException {
+        int id = nextId.incrementAndGet();
+        CompletableFuture<BinaryProtocol.Response> f = new CompletableFuture<>();
+        pending.put(id, f);
+        if (closed) {
+            // The reader already failed everything pending; do not leave this one hanging.
+            pending.remove(id);
+            f.completeExceptionally(new IOException("Connection closed"));
+            return f;
+        }
+        synchronized (out) {
+            BinaryProtocol.writeRequest(out, BinaryProtocol.Request.of(id, maxDepth, timeoutMs, cube));
+        }
+        f.whenComplete((r, e) -> {
+            if (f.isCancelled()) cancel(id);
+        });
+        return f;
+    }
+
+    // The server still answers the request; the reader finds its future already done.
+    private void cancel(int id) {
+        if (closed) return;
+        try {
+            synchronized (out) {
+                BinaryProtocol.writeRequest(out, BinaryProtocol.Request.cancel(id));
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // The connection is going away, and the search with it.
+        }
+    }
+
+    public void flush() throws IOException {
+        synchronized (out) {
+            out.flush();
+        }
+    }
+
+    public BinaryProtocol.Response solve(CubieCube cube) throws IOException, InterruptedException, ExecutionException {
+        CompletableFuture<BinaryProtocol.Response> f = send(cube, 0, 0);
+        flush();
+        return f.get();
+    }
+
+    private void readLoop() {
+        try {
+            BinaryProtocol.Response r;
+            while ((r = BinaryProtocol.readResponse(in)) != null) {
+                CompletableFuture<BinaryProtocol.Response> f = pending.remove(r.id);
+                if (f != null) f.complete(r);
+            }
+        } catch (IOException ignored) {
+        }
+        closed = true;
+        IOException e = new IOException("Connection closed");
+        pending.values().forEach(f -> f.completeExceptionally(e));
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--check")) {
+            check();
+            return;
+        }
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 9090;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int window = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+
+        List<CubieCube> cubes = testCubes();
+
+        Semaphore slots = new Semaphore(window);
+        AtomicInteger ok = new AtomicInteger(), failed = new AtomicInteger(), wrong = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(requests);
+        long t0 = System.nanoTime();
+        try (BinarySolveClient client = new BinarySolveClient(host, port)) {
+            for (int i = 0; i < requests; i++) {
+                slots.acquire();
+                CubieCube cube = cubes.get(i % cubes.size());
+                client.send(cube, 0, 0).whenComplete((r, e) -> {
+                    if (e != null || r.status != BinaryProtocol.STATUS_OK) failed.incrementAndGet();
+                    else if (solves(cube, r.moves)) ok.incrementAndGet();
+                    else wrong.incrementAndGet();
+                    slots.release();
+                    done.countDown();
+                });
+                if (slots.availablePermits() == 0 || i == requests - 1) client.flush();
+            }
+            done.await();
+        }
+        double secs = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("%d requests in %.2f s: %.1f req/s (window %d), ok=%d failed=%d wrong=%d%n",
+                requests, secs, requests / secs, window, ok.get(), failed.get(), wrong.get());
+        if (failed.get() > 0 || wrong.get() > 0) System.exit(1);
+    }
+
+    /**
+     * Writes request and response frames (including the largest field values) and reads
+     * them back, then starts a BinarySolveServer on a loopback port, solves every
+     * testcases/ net through it and verifies each solution. An out-of-range maxDepth must
+     * come back as STATUS_BAD_REQUEST, and a response frame too short for its move count
+     * must be refused. A cancel frame must stop a long search. Throws on the first failure.
+     */
+    static void check() throws Exception {
+        List<CubieCube> cubes = testCubes();
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        List<BinaryProtocol.Request> sent = new ArrayList<>();
+        for (CubieCube c : cubes) sent.add(BinaryProtocol.Request.of(sent.size() + 1, 21, 5000, c));
+        sent.add(new BinaryProtocol.Request(-1, 255, 0xffff, CoordCube.N_URFtoDLB - 1, CoordCube.N_TWIST - 1,
+                CoordCube.N_URtoBR - 1, CoordCube.N_FLIP - 1));
+        for (BinaryProtocol.Request r : sent) BinaryProtocol.writeRequest(out, r);
+        byte[] allMoves = new byte[18];
+        for (int m = 0; m < allMoves.length; m++) allMoves[m] = (byte) m;
+        BinaryProtocol.writeResponse(out, new BinaryProtocol.Response(7, BinaryProtocol.STATUS_OK, allMoves));
+        BinaryProtocol.writeResponse(out, new BinaryProtocol.Response(8, BinaryProtocol.STATUS_BUSY, null));
+        out.flush();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buf.toByteArray()));
+        for (BinaryProtocol.Request r : sent) {
+            BinaryProtocol.Request back = BinaryProtocol.readRequest(in);
+            expect(back != null && back.id == r.id && back.maxDepth == r.maxDepth && back.timeoutMs == r.timeoutMs
+                    && back.cornerPerm == r.cornerPerm && back.twist == r.twist && back.edgePerm == r.edgePerm
+                    && back.flip == r.flip, "request " + r.id + " round trip");
+        }
+        BinaryProtocol.Response ok = BinaryProtocol.readResponse(in);
+        expect(ok != null && ok.id == 7 && ok.status == BinaryProtocol.STATUS_OK && Arrays.equals(ok.moves, allMoves),
+                "response with moves round trip");
+        BinaryProtocol.Response busy = BinaryProtocol.readResponse(in);
+        expect(busy != null && busy.id == 8 && busy.status == BinaryProtocol.STATUS_BUSY && busy.moves.length == 0,
+                "response without moves round trip");
+        expect(BinaryProtocol.readResponse(in) == null, "clean end of stream");
+        // A frame claiming 3 moves in a 6-byte body must be refused, not read past.
+        byte[] shortFrame = {0, 0, 0, 6, 0, 0, 0, 9, 0, 3, 1, 2, 3};
+        try {
+            BinaryProtocol.readResponse(new DataInputStream(new ByteArrayInputStream(shortFrame)));
+            expect(false, "short response frame rejected");
+        } catch (IOException expected) {
+            // Rejected as it should be.
+        }
+
+        ThreadFactory daemons = r -> {
+            Thread t = new Thread(r, "binary-check");
+            t.setDaemon(true);
+            return t;
+        };
+        ExecutorService solves = Executors.newFixedThreadPool(2, daemons);
+        BinarySolveServer server = new BinarySolveServer(0, solves, Executors.newCachedThreadPool(daemons), 16, 10_000);
+        int port = server.start(InetAddress.getLoopbackAddress());
+        try (BinarySolveClient client = new BinarySolveClient("127.0.0.1", port)) {
+            List<CompletableFuture<BinaryProtocol.Response>> replies = new ArrayList<>();
+            for (CubieCube c : cubes) replies.add(client.send(c, 0, 0));
+            CompletableFuture<BinaryProtocol.Response> deepest = client.send(cubes.get(0), SolveOptions.MAX_LENGTH_LIMIT, 0);
+            CompletableFuture<BinaryProtocol.Response> tooDeep = client.send(cubes.get(0), SolveOptions.MAX_LENGTH_LIMIT + 1, 0);
+            client.flush();
+            for (int i = 0; i < cubes.size(); i++) {
+                BinaryProtocol.Response r = replies.get(i).get(30, TimeUnit.SECONDS);
+                expect(r.status == BinaryProtocol.STATUS_OK && solves(cubes.get(i), r.moves), "solve of testcase " + i);
+            }
+            BinaryProtocol.Response r = deepest.get(30, TimeUnit.SECONDS);
+            expect(r.status == BinaryProtocol.STATUS_OK && solves(cubes.get(0), r.moves), "solve at maxDepth 30");
+            expect(tooDeep.get(30, TimeUnit.SECONDS).status == BinaryProtocol.STATUS_BAD_REQUEST, "maxDepth 31 rejected");
+            checkCancel(port);
+        } finally {
+            server.stop();
+        }
+        System.out.println("Binary protocol check passed: " + (sent.size() + 2) + " frames round-tripped, "
+                + (cubes.size() + 1) + " solutions verified");
+    }
+
+    // A random state limited to 17 moves searches until its deadline unless the cancel stops it.
+    private static void checkCancel(int port) throws IOException {
+        CubieCube cube = new FaceCube(Workloads.randomStates(1).get(0)).toCubieCube();
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            s.setSoTimeout(5000);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            BinaryProtocol.writeRequest(out, BinaryProtocol.Request.of(1, 17, 10_000, cube));
+            out.flush();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            BinaryProtocol.writeRequest(out, BinaryProtocol.Request.cancel(1));
+            out.flush();
+            BinaryProtocol.Response r = BinaryProtocol.readResponse(in);
+            expect(r != null && r.id == 1 && r.status == SolveResult.Status.CANCELLED.code, "cancel frame stops the search");
+        }
+    }
+
+    private static void expect(boolean ok, String what) {
+        if (!ok) throw new IllegalStateException("Check failed: " + what);
+    }
+
+    private static List<CubieCube> testCubes() throws IOException {
+        List<CubieCube> cubes = new ArrayList<>();
+        Path dir = Paths.get("testcases");
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.txt")) {
+                for (Path p : ds) cubes.add(new FaceCube(CubeInputUtil.parseToFacelets(Files.readString(p))).toCubieCube());
+            }
+        }
+        if (cubes.isEmpty()) throw new IllegalStateException("No cubes found in testcases/");
+        return cubes;
+    }
+
+    private static boolean solves(CubieCube start, byte[] moves) {
+        CubieCube c = new CubieCube(start.cp, start.co, start.ep, start.eo);
+        for (byte m : moves)
+            for (int k = 0; k <= m % 3; k++) {
+                c.cornerMultiply(CubieCube.moveCube[m / 3]);
+                c.edgeMultiply(CubieCube.moveCube[m / 3]);
+            }
+        return c.getURFtoDLB() == 0 && c.getURtoBR() == 0 && c.getTwist() == 0 && c.getFlip() == 0;
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Raw TCP listener speaking {@link BinaryProtocol}. Clients may pipeline many requests
+ * on one connection; each is solved on the shared solve executor and answered as soon
+ * as it finishes, so responses can arrive out of order and are matched by id. A
+ * per-connection window bounds how many requests one client can have in flight, and a
+ * cancel frame stops one of them early.
+ *
+ * Run on its own ({@code java BinarySolveServer [threads]}) it is a solver worker for
+ * {@link WorkerPool}: it loads the tables, listens on an ephemeral loopback port, prints
+ * "PORT n" on stdout once ready, and exits when its stdin closes.
+ */
+public class BinarySolveServer {
+    private static final int DEFAULT_MAX_DEPTH = 21;
+    private static final int DEFAULT_TIMEOUT_MS = 5 << 10;
+    private static final int DEFAULT_WINDOW = 64;
+
+    private final int port;
+    private final Executor solveExecutor;
+    private final Executor connectionExecutor;
+    private final int window;
+    private final int maxTimeoutMs;
+    private ServerSocket socket;
+
+    public BinarySolveServer(int port, Executor solveExecutor, Executor connectionExecutor, int window,
+            int maxTimeoutMs) {
+        this.port = port;
+        this.solveExecutor = solveExecutor;
+        this.connectionExecutor = connectionExecutor;
+        this.window = window;
+        this.maxTimeoutMs = maxTimeoutMs;
+    }
+
+    public int start() throws IOException {
+        return start(null);
+    }
+
+    /** Binds to the given local address (null for all interfaces) and returns the bound port. */
+    public int start(InetAddress bindAddress) throws IOException {
+        socket = new ServerSocket(port, 50, bindAddress);
+        Thread t = new Thread(this::acceptLoop, "binary-accept");
+        t.setDaemon(true);
+        t.start();
+        return socket.getLocalPort();
+    }
+
+    public void stop() throws IOException {
+        socket.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        TableCache.prepare();
+        AtomicInteger n = new AtomicInteger();
+        ThreadFactory daemons = r -> {
+            Thread t = new Thread(r, "worker-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        ThreadPoolExecutor solves = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(DEFAULT_WINDOW), daemons, new ThreadPoolExecutor.AbortPolicy());
+        BinarySolveServer server = new BinarySolveServer(0, solves, Executors.newCachedThreadPool(daemons),
+                DEFAULT_WINDOW, 60_000);
+        System.out.println("PORT " + server.start(InetAddress.getLoopbackAddress()));
+        System.out.flush();
+        // The parent holds our stdin open; end of stream means it has gone away.
+        while (System.in.read() != -1) {
+        }
+        System.exit(0);
+    }
+
+    private void acceptLoop() {
+        while (!socket.isClosed()) {
+            try {
+                Socket s = socket.accept();
+                s.setTcpNoDelay(true);
+                try {
+                    connectionExecutor.execute(() -> serve(s));
+                } catch (RejectedExecutionException e) {
+                    // At the connection limit: refuse rather than queue a client nobody will read.
+                    s.close();
+                }
+            } catch (IOException e) {
+                if (!socket.isClosed()) System.err.println("Binary accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket s) {
+        Semaphore inFlight = new Semaphore(window);
+        // Searches of this connection's requests, queued or running, for cancel frames to find.
+        ConcurrentHashMap<Integer, Search> searches = new ConcurrentHashMap<>();
+        try (s;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            BinaryProtocol.Request req;
+            while ((req = BinaryProtocol.readRequest(in)) != null) {
+                if (req.cancel) {
+                    Search running = searches.get(req.id);
+                    if (running != null) running.cancel();
+                    continue;
+                }
+                inFlight.acquire();
+                BinaryProtocol.Request r = req;
+                Search search = new Search();
+                searches.put(r.id, search);
+                try {
+                    solveExecutor.execute(() -> {
+                        try {
+                            reply(out, solve(r, search));
+                        } finally {
+                            searches.remove(r.id, search);
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    searches.remove(r.id, search);
+                    inFlight.release();
+                    reply(out, new BinaryProtocol.Response(r.id, BinaryProtocol.STATUS_BUSY, null));
+                }
+            }
+            // Drain: wait for outstanding replies before closing the connection.
+            inFlight.acquire(window);
+        } catch (IOException e) {
+            // Client went away or sent a malformed frame; drop the connection.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private BinaryProtocol.Response solve(BinaryProtocol.Request r, Search search) {
+        CubieCube cc = r.toCubieCube();
+        if (cc == null || r.maxDepth > SolveOptions.MAX_LENGTH_LIMIT)
+            return new BinaryProtocol.Response(r.id, BinaryProtocol.STATUS_BAD_REQUEST, null);
+        int maxDepth = r.maxDepth == 0 ? DEFAULT_MAX_DEPTH : r.maxDepth;
+        int timeoutMs = r.timeoutMs == 0 ? DEFAULT_TIMEOUT_MS : r.timeoutMs;
+        SolveResult result = search.solveBy(cc, maxDepth, System.currentTimeMillis() + Math.min(timeoutMs, maxTimeoutMs));
+        return new BinaryProtocol.Response(r.id, result.status.code, result.ok() ? result.moves() : null);
+    }
+
+    private static void reply(DataOutputStream out, BinaryProtocol.Response resp) {
+        synchronized (out) {
+            try {
+                BinaryProtocol.writeResponse(out, resp);
+                out.flush();
+            } catch (IOException ignored) {
+                // The reader side notices the broken connection.
+            }
+        }
+    }
+}
@@ -51,7 +51,7 @@ class CoordCube {
 	}
 
 	static short[][] twistMove = new short[N_TWIST][N_MOVE];
-	static {
+	private static void buildTwistMove() {
 		CubieCube a = new CubieCube();
 		for (short i = 0; i < N_TWIST; i++) {
 			a.setTwist(i);
@@ -67,7 +67,7 @@ class CoordCube {
 	}
 
 	static short[][] flipMove = new short[N_FLIP][N_MOVE];
-	static {
+	private static void buildFlipMove() {
 		CubieCube a = new CubieCube();
 		for (short i = 0; i < N_FLIP; i++) {
 			a.setFlip(i);
@@ -86,7 +86,7 @@ class CoordCube {
 			{ 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0 } };
 
 	static short[][] FRtoBR_Move = new short[N_FRtoBR][N_MOVE];
-	static {
+	private static void buildFRtoBR_Move() {
 		CubieCube a = new CubieCube();
 		for (short i = 0; i < N_FRtoBR; i++) {
 			a.setFRtoBR(i);
@@ -101,7 +101,7 @@ class CoordCube {
 	}
 
 	static short[][] URFtoDLF_Move = new short[N_URFtoDLF][N_MOVE];
-	static {
+	private static void buildURFtoDLF_Move() {
 		CubieCube a = new CubieCube();
 		for (short i = 0; i < N_URFtoDLF; i++) {
 			a.setURFtoDLF(i);
@@ -116,7 +116,7 @@ class CoordCube {
 	}
 
 	static short[][] URtoDF_Move = new short[N_URtoDF][N_MOVE];
-	static {
+	private static void buildURtoDF_Move() {
 		CubieCube a = new CubieCube();
 		for (short i = 0; i < N_URtoDF; i++) {
 			a.setURtoDF(i);
@@ -132,7 +132,7 @@ class CoordCube {
 	}
 
 	static short[][] URtoUL_Move = new short[N_URtoUL][N_MOVE];
-	static {
+	private static void buildURtoUL_Move() {
 		CubieCube a = new CubieCube();
 		for (short i = 0; i < N_URtoUL; i++) {
 			a.setURtoUL(i);
@@ -147,7 +147,7 @@ class CoordCube {
 	}
 
 	static short[][] UBtoDF_Move = new short[N_UBtoDF][N_MOVE];
-	static {
+	private static void buildUBtoDF_Move() {
 		CubieCube a = new CubieCube();
 		for (short i = 0; i < N_UBtoDF; i++) {
 			a.setUBtoDF(i);
@@ -162,7 +162,7 @@ class CoordCube {
 	}
 
 	static short[][] MergeURtoULandUBtoDF = new short[336][336];
-	static {
+	private static void buildMergeURtoULandUBtoDF() {
 
 		for (short uRtoUL = 0; uRtoUL < 336; uRtoUL++) {
 			for (short uBtoDF = 0; uBtoDF < 336; uBtoDF++) {
@@ -172,7 +172,7 @@ class CoordCube {
 	}
 
 	static byte[] Slice_URFtoDLF_Parity_Prun = new byte[N_SLICE2 * N_URFtoDLF * N_PARITY / 2];
-	static {
+	private static void buildSlice_URFtoDLF_Parity_Prun() {
 		for (int i = 0; i < N_SLICE2 * N_URFtoDLF * N_PARITY / 2; i++)
 			Slice_URFtoDLF_Parity_Prun[i] = -1;
 		int depth = 0;
@@ -215,7 +215,7 @@ class CoordCube {
 	}
 
 	static byte[] Slice_URtoDF_Parity_Prun = new byte[N_SLICE2 * N_URtoDF * N_PARITY / 2];
-	static {
+	private static void buildSlice_URtoDF_Parity_Prun() {
 		for (int i = 0; i < N_SLICE2 * N_URtoDF * N_PARITY / 2; i++)
 			Slice_URtoDF_Parity_Prun[i] = -1;
 		int depth = 0;
@@ -258,7 +258,7 @@ class CoordCube {
 	}
 
 	static byte[] Slice_Twist_Prun = new byte[N_SLICE1 * N_TWIST / 2 + 1];
-	static {
+	private static void buildSlice_Twist_Prun() {
 		for (int i = 0; i < N_SLICE1 * N_TWIST / 2 + 1; i++)
 			Slice_Twist_Prun[i] = -1;
 		int depth = 0;
@@ -283,7 +283,7 @@ class CoordCube {
 	}
 
 	static byte[] Slice_Flip_Prun = new byte[N_SLICE1 * N_FLIP / 2];
-	static {
+	private static void buildSlice_Flip_Prun() {
 		for (int i = 0; i < N_SLICE1 * N_FLIP / 2; i++)
 			Slice_Flip_Prun[i] = -1;
 		int depth = 0;
@@ -307,6 +307,62 @@ class CoordCube {
 		}
 	}
 
+	/**
+	 * Builds or loads the tables if that has not happened yet. The work is done by the static
+	 * initialiser below, which the first call (or first use of any table) runs exactly once.
+	 */
+	static void init() {
+	}
+
+	// Runs after all table fields are allocated; the move tables must be built before the
+	// pruning tables that walk them.
+	static {
+		long t0 = System.nanoTime();
+		boolean loaded = TableCache.load();
+		if (!loaded) {
+			JfrEvents.TableInit e = new JfrEvents.TableInit();
+			e.begin();
+			buildTwistMove();
+			e = built(e, "twistMove", twistMove);
+			buildFlipMove();
+			e = built(e, "flipMove", flipMove);
+			buildFRtoBR_Move();
+			e = built(e, "FRtoBR_Move", FRtoBR_Move);
+			buildURFtoDLF_Move();
+			e = built(e, "URFtoDLF_Move", URFtoDLF_Move);
+			buildURtoDF_Move();
+			e = built(e, "URtoDF_Move", URtoDF_Move);
+			buildURtoUL_Move();
+			e = built(e, "URtoUL_Move", URtoUL_Move);
+			buildUBtoDF_Move();
+			e = built(e, "UBtoDF_Move", UBtoDF_Move);
+			buildMergeURtoULandUBtoDF();
+			e = built(e, "MergeURtoULandUBtoDF", MergeURtoULandUBtoDF);
+			buildSlice_URFtoDLF_Parity_Prun();
+			e = built(e, "Slice_URFtoDLF_Parity_Prun", Slice_URFtoDLF_Parity_Prun.length);
+			buildSlice_URtoDF_Parity_Prun();
+			e = built(e, "Slice_URtoDF_Parity_Prun", Slice_URtoDF_Parity_Prun.length);
+			buildSlice_Twist_Prun();
+			e = built(e, "Slice_Twist_Prun", Slice_Twist_Prun.length);
+			buildSlice_Flip_Prun();
+			built(e, "Slice_Flip_Prun", Slice_Flip_Prun.length);
+			TableCache.save();
+		}
+		TableCache.initialised(loaded, System.nanoTime() - t0);
+	}
+
+	// Commits the event for the table just built and starts the next one.
+	private static JfrEvents.TableInit built(JfrEvents.TableInit e, String table, short[][] t) {
+		return built(e, table, 2L * t.length * t[0].length);
+	}
+
+	private static JfrEvents.TableInit built(JfrEvents.TableInit e, String table, long bytes) {
+		TableCache.tableEvent(e, table, "built", bytes);
+		JfrEvents.TableInit next = new JfrEvents.TableInit();
+		next.begin();
+		return next;
+	}
+
 	static void setPruning(byte[] table, int index, byte value) {
 		if ((index & 1) == 0)
 			table[index / 2] &= 0xf0 | value;
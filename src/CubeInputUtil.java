@@ -30,7 +30,22 @@ public class CubeInputUtil {
         return CubeTraceUtil.applyMoves(SOLVED, moves);
     }
 
-    
+    /**
+     * Parses one line of a line-oriented request stream: anything parseToFacelets accepts,
+     * or a JSON object carrying it in a "facelets", "cube" or "input" field.
+     */
+    public static String parseRequestLine(String line) {
+        String input = line.trim();
+        if (input.startsWith("{")) {
+            String v = JsonUtil.stringField(input, "facelets");
+            if (v == null) v = JsonUtil.stringField(input, "cube");
+            if (v == null) v = JsonUtil.stringField(input, "input");
+            if (v == null) throw new IllegalArgumentException("Expected a \"facelets\", \"cube\" or \"input\" field");
+            input = v;
+        }
+        return parseToFacelets(input);
+    }
+
     private static String stripTrailing(String s){
         if (s == null) return "";
         int end = s.length();
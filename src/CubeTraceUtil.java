@@ -1,7 +1,11 @@
+import java.io.IOException;
 import java.util.*;
 
 public class CubeTraceUtil {
 
+    // One JSON-safe character per facelet position 0..53, used by delta traces.
+    public static final String DELTA_INDEX = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQR";
+
     public static List<String> trace(String startFacelets, List<String> moves){
         List<String> out = new ArrayList<>();
         String cur = startFacelets;
@@ -13,6 +17,45 @@ public class CubeTraceUtil {
         return out;
     }
 
+    /**
+     * Writes the frames of {@link #trace} as a JSON array. Moves are applied to one cube and
+     * each frame is rendered into a reused buffer, so no string is kept per frame.
+     */
+    public static void writeTrace(JsonWriter w, String startFacelets, List<String> moves) throws IOException {
+        w.beginArray().value(startFacelets);
+        CubieCube cc = new FaceCube(startFacelets).toCubieCube();
+        StringBuilder frame = new StringBuilder(54);
+        for (String mv : moves){
+            turn(cc, mv);
+            FaceCube fc = cc.toFaceCube();
+            frame.setLength(0);
+            for (int i=0;i<54;i++) frame.append(fc.f[i].toString());
+            w.value(frame);
+        }
+        w.endArray();
+    }
+
+    /**
+     * Compact trace: for each move, the facelets it changes as (position, color) character
+     * pairs, where the position is encoded with {@link #DELTA_INDEX}.
+     */
+    public static List<String> deltas(String startFacelets, List<String> moves){
+        List<String> out = new ArrayList<>(moves.size());
+        String cur = startFacelets;
+        StringBuilder sb = new StringBuilder(40);
+        for (String mv : moves){
+            String next = apply(cur, mv);
+            sb.setLength(0);
+            for (int i=0;i<54;i++){
+                char c = next.charAt(i);
+                if (c != cur.charAt(i)) sb.append(DELTA_INDEX.charAt(i)).append(c);
+            }
+            out.add(sb.toString());
+            cur = next;
+        }
+        return out;
+    }
+
     public static String applyMoves(String startFacelets, List<String> moves){
         String cur = startFacelets;
         for (String mv : moves) cur = apply(cur, mv);
@@ -21,6 +64,13 @@ public class CubeTraceUtil {
 
     public static String apply(String facelets, String move){
         if (move == null || move.isBlank()) return facelets;
+        CubieCube cc = new FaceCube(facelets).toCubieCube();
+        turn(cc, move);
+        return faceCubeToString(cc.toFaceCube());
+    }
+
+    private static void turn(CubieCube cc, String move){
+        if (move == null || move.isBlank()) return;
         String mv = move.trim();
         char f = mv.charAt(0);
         int axis = "URFDLB".indexOf(f);
@@ -33,16 +83,10 @@ public class CubeTraceUtil {
             else if (s == '\'') power = 3;
         }
 
-        FaceCube fc = new FaceCube(facelets);
-        CubieCube cc = fc.toCubieCube();
-
         for (int i=0;i<power;i++){
             cc.cornerMultiply(CubieCube.moveCube[axis]);
             cc.edgeMultiply(CubieCube.moveCube[axis]);
         }
-
-        FaceCube out = cc.toFaceCube();
-        return faceCubeToString(out);
     }
 
     private static String faceCubeToString(FaceCube fc){
@@ -0,0 +1,88 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the solver and the server. They cost next to nothing
+ * unless a recording with them enabled is running (see /admin/jfr, or start the JVM with
+ * -XX:StartFlightRecording). All are in the "Rubik" category of JDK Mission Control.
+ */
+final class JfrEvents {
+    private JfrEvents() {}
+
+    @Name("rubik.TableInit")
+    @Label("Table Init")
+    @Description("One CoordCube move or pruning table built, or copied from the table cache file")
+    @Category({ "Rubik", "Tables" })
+    @StackTrace(false)
+    public static final class TableInit extends Event {
+        @Label("Table")
+        public String table;
+        @Label("Source")
+        @Description("built or file")
+        public String source;
+        @Label("Bytes")
+        public long bytes;
+    }
+
+    @Name("rubik.Solve")
+    @Label("Solve")
+    @Description("One two-phase search pass; improving searches record one per pass")
+    @Category({ "Rubik", "Search" })
+    @StackTrace(false)
+    public static final class Solve extends Event {
+        @Label("Input")
+        @Description("facelets or cubie")
+        public String input;
+        @Label("Max Depth")
+        public int maxDepth;
+        @Label("Solution Length")
+        @Description("-1 when the search ended without a solution")
+        public int length;
+        @Label("Phase-1 Depth")
+        public int depthPhase1;
+        @Label("Nodes")
+        public long nodes;
+        @Label("Result")
+        @Description("ok, or the \"Error N\" the search returned")
+        public String result;
+    }
+
+    @Name("rubik.HttpRequest")
+    @Label("HTTP Request")
+    @Category({ "Rubik", "HTTP" })
+    @StackTrace(false)
+    public static final class HttpRequest extends Event {
+        @Label("Method")
+        public String method;
+        @Label("Context")
+        public String context;
+        @Label("Path")
+        public String path;
+        @Label("Status")
+        public int status;
+    }
+
+    @Name("rubik.CacheLookup")
+    @Label("Cache Lookup")
+    @Description("Solve coalescing, the table cache file and static asset revalidation")
+    @Category({ "Rubik", "Cache" })
+    @StackTrace(false)
+    public static final class CacheLookup extends Event {
+        @Label("Cache")
+        public String cache;
+        @Label("Hit")
+        public boolean hit;
+    }
+
+    static void cacheLookup(String cache, boolean hit) {
+        CacheLookup e = new CacheLookup();
+        if (!e.shouldCommit()) return;
+        e.cache = cache;
+        e.hit = hit;
+        e.commit();
+    }
+}
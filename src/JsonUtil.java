@@ -31,4 +31,104 @@ public class JsonUtil {
         sb.append("]");
         return sb.toString();
     }
+
+    /**
+     * Returns the string value of a top-level field of a JSON object, or null when the
+     * field is absent or not a string. Nested values are skipped, not interpreted.
+     */
+    public static String stringField(String json, String name){
+        int[] pos = {valueStart(json, name)};
+        if (pos[0] < 0 || json.charAt(pos[0]) != '"') return null;
+        return readString(json, pos);
+    }
+
+    /** Returns the integer value of a top-level field, or def when absent or not an integer. */
+    public static long longField(String json, String name, long def){
+        int start = valueStart(json, name);
+        if (start < 0) return def;
+        int end = skipValue(json, start);
+        try { return Long.parseLong(json.substring(start, end).trim()); }
+        catch (NumberFormatException ex){ return def; }
+    }
+
+    // Index of the value of the named top-level field, or -1.
+    private static int valueStart(String json, String name){
+        if (json == null) return -1;
+        int[] pos = {skipWs(json, 0)};
+        if (pos[0] >= json.length() || json.charAt(pos[0]) != '{') return -1;
+        pos[0]++;
+        while (true){
+            pos[0] = skipWs(json, pos[0]);
+            if (pos[0] >= json.length() || json.charAt(pos[0]) != '"') return -1;
+            String key = readString(json, pos);
+            pos[0] = skipWs(json, pos[0]);
+            if (key == null || pos[0] >= json.length() || json.charAt(pos[0]) != ':') return -1;
+            pos[0] = skipWs(json, pos[0] + 1);
+            if (pos[0] >= json.length()) return -1;
+            if (key.equals(name)) return pos[0];
+            if (json.charAt(pos[0]) == '"'){
+                if (readString(json, pos) == null) return -1;
+            } else {
+                pos[0] = skipValue(json, pos[0]);
+            }
+            pos[0] = skipWs(json, pos[0]);
+            if (pos[0] >= json.length() || json.charAt(pos[0]) != ',') return -1;
+            pos[0]++;
+        }
+    }
+
+    private static int skipWs(String s, int i){
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+
+    // Reads the string starting at pos[0] (the opening quote) and leaves pos[0] after it.
+    private static String readString(String s, int[] pos){
+        StringBuilder out = new StringBuilder();
+        int i = pos[0] + 1;
+        while (i < s.length()){
+            char c = s.charAt(i++);
+            if (c == '"'){ pos[0] = i; return out.toString(); }
+            if (c != '\\'){ out.append(c); continue; }
+            if (i >= s.length()) return null;
+            char e = s.charAt(i++);
+            switch(e){
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                case 't': out.append('\t'); break;
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'u':
+                    if (i + 4 > s.length()) return null;
+                    try { out.append((char) Integer.parseInt(s.substring(i, i + 4), 16)); }
+                    catch (NumberFormatException ex){ return null; }
+                    i += 4;
+                    break;
+                default: out.append(e);
+            }
+        }
+        return null;
+    }
+
+    // Skips a number, literal, object or array and returns the index after it.
+    private static int skipValue(String s, int i){
+        int depth = 0;
+        boolean inString = false;
+        for (; i < s.length(); i++){
+            char c = s.charAt(i);
+            if (inString){
+                if (c == '\\') i++;
+                else if (c == '"') inString = false;
+                continue;
+            }
+            if (c == '"') inString = true;
+            else if (c == '{' || c == '[') depth++;
+            else if (c == '}' || c == ']'){
+                if (depth == 0) return i;
+                if (--depth == 0) return i + 1;
+            }
+            else if (c == ',' && depth == 0) return i;
+        }
+        return i;
+    }
 }
@@ -0,0 +1,279 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Small streaming UTF-8 JSON writer. Output goes into a fixed, reused buffer; if a
+ * document outgrows the buffer the writer asks its {@link Sink} for a stream once
+ * and from then on flushes the buffer into it, so payload size never grows the heap.
+ * Escaping follows {@link JsonUtil#esc}.
+ */
+public final class JsonWriter {
+    /** Writes one JSON value (usually an object) to the writer. */
+    public interface Body {
+        void writeTo(JsonWriter w) throws IOException;
+    }
+
+    /** Supplies the output stream the first time the buffer overflows. */
+    public interface Sink {
+        OutputStream open() throws IOException;
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int POOL_MAX = 64;
+    private static final ConcurrentLinkedQueue<JsonWriter> POOL = new ConcurrentLinkedQueue<>();
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+    private Sink sink;
+    private OutputStream out;
+    // Bit i set = the container at depth i already has a member, so the next one needs a comma.
+    private long hasMember;
+    private int depth;
+    private boolean afterName;
+
+    private JsonWriter() {}
+
+    public static JsonWriter acquire() {
+        JsonWriter w = POOL.poll();
+        return w != null ? w : new JsonWriter();
+    }
+
+    public static void release(JsonWriter w) {
+        w.reset(null);
+        if (POOL.size() < POOL_MAX) POOL.offer(w);
+    }
+
+    /** Starts a new document. With a null sink the whole document must fit the buffer. */
+    public JsonWriter reset(Sink sink) {
+        this.sink = sink;
+        this.out = null;
+        this.pos = 0;
+        this.hasMember = 0;
+        this.depth = 0;
+        this.afterName = false;
+        return this;
+    }
+
+    /** True once output has gone to the sink's stream rather than staying in the buffer. */
+    public boolean spilled() {
+        return out != null;
+    }
+
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public int size() {
+        return pos;
+    }
+
+    /** Flushes buffered bytes to the sink's stream, if one was opened, and closes it. */
+    public void finish() throws IOException {
+        if (out == null) return;
+        out.write(buf, 0, pos);
+        pos = 0;
+        out.close();
+    }
+
+    /**
+     * Writes one document and a trailing newline to a file. The newline goes through the
+     * buffer too, so it lands before the stream is closed whether or not the document spilled.
+     */
+    public static void writeFile(Path file, Body body) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            JsonWriter w = acquire();
+            try {
+                body.writeTo(w.reset(() -> out));
+                w.write('\n');
+                if (w.spilled()) w.finish();
+                else out.write(w.buf, 0, w.pos);
+            } finally {
+                release(w);
+            }
+        }
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        separator();
+        string(name);
+        write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(CharSequence s) throws IOException {
+        if (s == null) return nullValue();
+        separator();
+        string(s);
+        return this;
+    }
+
+    public JsonWriter value(long v) throws IOException {
+        separator();
+        if (v == Long.MIN_VALUE) {
+            ascii("-9223372036854775808");
+            return this;
+        }
+        if (v < 0) {
+            write('-');
+            v = -v;
+        }
+        ensure(20);
+        int start = pos;
+        do {
+            buf[pos++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+        return this;
+    }
+
+    public JsonWriter value(boolean v) throws IOException {
+        separator();
+        ascii(v ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separator();
+        ascii("null");
+        return this;
+    }
+
+    public JsonWriter field(String name, CharSequence value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, long value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, boolean value) throws IOException {
+        return name(name).value(value);
+    }
+
+    public JsonWriter field(String name, List<String> items) throws IOException {
+        name(name).beginArray();
+        for (int i = 0; i < items.size(); i++) value(items.get(i));
+        return endArray();
+    }
+
+    private JsonWriter open(char c) throws IOException {
+        separator();
+        write(c);
+        depth++;
+        hasMember &= ~(1L << depth);
+        return this;
+    }
+
+    private JsonWriter close(char c) throws IOException {
+        depth--;
+        write(c);
+        return this;
+    }
+
+    private void separator() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        long bit = 1L << depth;
+        if (depth > 0 && (hasMember & bit) != 0) write(',');
+        hasMember |= bit;
+    }
+
+    private void string(CharSequence s) throws IOException {
+        write('"');
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                if (pos == buf.length) flush();
+                buf[pos++] = (byte) c;
+                continue;
+            }
+            switch (c) {
+                case '\\': ascii("\\\\"); break;
+                case '"': ascii("\\\""); break;
+                case '\n': ascii("\\n"); break;
+                case '\r': ascii("\\r"); break;
+                case '\t': ascii("\\t"); break;
+                default:
+                    if (c < 0x20) write(' ');
+                    else if (c < 0x800) {
+                        ensure(2);
+                        buf[pos++] = (byte) (0xc0 | (c >> 6));
+                        buf[pos++] = (byte) (0x80 | (c & 0x3f));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        int cp = Character.toCodePoint(c, s.charAt(++i));
+                        ensure(4);
+                        buf[pos++] = (byte) (0xf0 | (cp >> 18));
+                        buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                        buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                        buf[pos++] = (byte) (0x80 | (cp & 0x3f));
+                    } else if (Character.isSurrogate(c)) {
+                        // Unpaired surrogate: emit it as an escape rather than invalid UTF-8.
+                        ensure(6);
+                        buf[pos++] = '\\';
+                        buf[pos++] = 'u';
+                        buf[pos++] = HEX[(c >> 12) & 0xf];
+                        buf[pos++] = HEX[(c >> 8) & 0xf];
+                        buf[pos++] = HEX[(c >> 4) & 0xf];
+                        buf[pos++] = HEX[c & 0xf];
+                    } else {
+                        ensure(3);
+                        buf[pos++] = (byte) (0xe0 | (c >> 12));
+                        buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                        buf[pos++] = (byte) (0x80 | (c & 0x3f));
+                    }
+            }
+        }
+        write('"');
+    }
+
+    private void ascii(String s) throws IOException {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) buf[pos++] = (byte) s.charAt(i);
+    }
+
+    private void write(char c) throws IOException {
+        if (pos == buf.length) flush();
+        buf[pos++] = (byte) c;
+    }
+
+    private void ensure(int n) throws IOException {
+        if (pos + n > buf.length) flush();
+    }
+
+    private void flush() throws IOException {
+        if (out == null) {
+            if (sink == null) throw new IOException("JSON document exceeds " + BUFFER_SIZE + " bytes");
+            out = sink.open();
+        }
+        out.write(buf, 0, pos);
+        pos = 0;
+    }
+}
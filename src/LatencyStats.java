@@ -0,0 +1,62 @@
+import java.util.Arrays;
+
+/**
+ * Collects raw latency samples (nanoseconds) and reports percentiles. Not thread-safe;
+ * callers record from one thread or synchronize.
+ */
+public class LatencyStats {
+    private long[] samples = new long[1024];
+    private int count;
+    private long sum;
+    private boolean sorted = true;
+
+    public void record(long nanos) {
+        if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+        samples[count++] = nanos;
+        sum += nanos;
+        sorted = false;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public double meanMillis() {
+        return count == 0 ? 0 : sum / 1e6 / count;
+    }
+
+    /** Nearest-rank percentile in milliseconds, p in [0, 100]. */
+    public double percentileMillis(double p) {
+        if (count == 0) return 0;
+        if (!sorted) {
+            Arrays.sort(samples, 0, count);
+            sorted = true;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * count);
+        return samples[Math.max(0, Math.min(count - 1, rank - 1))] / 1e6;
+    }
+
+    /**
+     * A copy with the samples hidden by coordinated omission filled back in, as HdrHistogram's
+     * recordValueWithExpectedInterval does: a sample longer than the expected interval between
+     * requests stood in for the requests that would have been sent meanwhile, so those are
+     * added with latencies falling by one interval each.
+     */
+    public LatencyStats correctedFor(long expectedIntervalNanos) {
+        LatencyStats c = new LatencyStats();
+        for (int i = 0; i < count; i++) {
+            long v = samples[i];
+            c.record(v);
+            if (expectedIntervalNanos <= 0) continue;
+            for (long missing = v - expectedIntervalNanos; missing >= expectedIntervalNanos; missing -= expectedIntervalNanos)
+                c.record(missing);
+        }
+        return c;
+    }
+
+    public String summary() {
+        return String.format("n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms",
+                count, meanMillis(), percentileMillis(50), percentileMillis(90), percentileMillis(99),
+                percentileMillis(99.9), percentileMillis(100));
+    }
+}
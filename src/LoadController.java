@@ -0,0 +1,145 @@
+import java.util.Arrays;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Trades solution quality for latency under load. It watches the solve queue depth and
+ * the p99 of recent solve latencies and moves between degradation levels:
+ *
+ *   0  requests run as asked
+ *   1  deadline at most 1000 ms, at least 22 moves allowed, best/exhaustive become first
+ *   2  deadline at most 250 ms, at least 23 moves allowed
+ *   3  deadline at most 100 ms, at least 24 moves allowed
+ *
+ * A longer allowed solution is what makes the search cheap: the first 24-move answer
+ * turns up after a small fraction of the nodes a 21-move one needs. Levels step up as
+ * soon as the queue or the p99 crosses the threshold for the current level, but only
+ * step down after both have stayed well below it for {@code COOL_DOWN_MS}, so the level
+ * does not flap at the boundary. The level is re-evaluated on a timer, so it also
+ * recovers while no requests arrive.
+ *
+ * Solves that time out count with the time they took, and solves turned away because the
+ * queue was full count with their whole deadline and, until the next evaluation, as
+ * queued work: otherwise the p99 would look best exactly when the server sheds most.
+ */
+public class LoadController {
+    private static final long[] DEADLINE_CAP = { Long.MAX_VALUE, 1000, 250, 100 };
+    private static final int[] MIN_LENGTH = { 0, 22, 23, 24 };
+    private static final int MAX_LEVEL = 3;
+    private static final int SAMPLES = 256;
+    private static final long WINDOW_MS = 5000;
+    private static final long EVALUATE_EVERY_MS = 250;
+    // Gives the previous step time to show in the latencies before stepping up again.
+    private static final long STEP_UP_MS = 1000;
+    private static final long COOL_DOWN_MS = 3000;
+    // Fewer recent samples than this say too little about the p99 to step up on.
+    private static final int MIN_SAMPLES = 10;
+
+    private final IntSupplier queueDepth;
+    private final int threads;
+    private final long p99TargetMs;
+
+    private final long[] latencyMs = new long[SAMPLES];
+    private final long[] recordedAt = new long[SAMPLES];
+    // Solves refused since the last evaluation.
+    private final AtomicInteger shed = new AtomicInteger();
+    private int next;
+    private volatile int level;
+    private long calmSince = -1;
+    private long lastChange;
+    private long lastP99;
+    private int lastSamples;
+    private long changes;
+
+    public LoadController(IntSupplier queueDepth, int threads, long p99TargetMs) {
+        this.queueDepth = queueDepth;
+        this.threads = Math.max(1, threads);
+        this.p99TargetMs = p99TargetMs;
+        new Timer("load-controller", true).scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                evaluate();
+            }
+        }, EVALUATE_EVERY_MS, EVALUATE_EVERY_MS);
+    }
+
+    public int level() {
+        return level;
+    }
+
+    public synchronized long p99Ms() {
+        return lastP99;
+    }
+
+    public synchronized long changes() {
+        return changes;
+    }
+
+    public int queued() {
+        return queueDepth.getAsInt();
+    }
+
+    public synchronized void record(long millis) {
+        latencyMs[next] = millis;
+        recordedAt[next] = System.currentTimeMillis();
+        next = (next + 1) % SAMPLES;
+    }
+
+    /** A solve refused for want of queue room; it would have waited at least its deadline. */
+    public void shed(long deadlineMs) {
+        shed.incrementAndGet();
+        record(deadlineMs);
+    }
+
+    /** The options to actually run with at the given level. */
+    public SolveOptions adjust(SolveOptions requested, int lv) {
+        if (lv == 0) return requested;
+        return new SolveOptions(requested.tier,
+                Math.max(requested.maxLength, MIN_LENGTH[lv]),
+                Math.min(requested.deadlineMs, DEADLINE_CAP[lv]),
+                SolveOptions.Mode.FIRST);
+    }
+
+    private synchronized void evaluate() {
+        long now = System.currentTimeMillis();
+        lastP99 = recentP99(now);
+        int queued = queueDepth.getAsInt() + shed.getAndSet(0);
+        int lv = level;
+        boolean slow = lastSamples >= MIN_SAMPLES && lastP99 > p99TargetMs;
+        if (lv < MAX_LEVEL && (queued > threads * (lv + 1) || slow)) {
+            if (now - lastChange >= STEP_UP_MS) setLevel(lv + 1, now);
+            calmSince = -1;
+        } else if (lv > 0 && queued <= threads * lv / 2 && lastP99 < p99TargetMs / 2) {
+            if (calmSince < 0) calmSince = now;
+            else if (now - calmSince >= COOL_DOWN_MS) {
+                setLevel(lv - 1, now);
+                calmSince = now;
+            }
+        } else {
+            calmSince = -1;
+        }
+    }
+
+    private void setLevel(int lv, long now) {
+        level = lv;
+        lastChange = now;
+        changes++;
+        System.out.println("Load level " + lv + " (queued " + queueDepth.getAsInt() + ", p99 " + lastP99 + " ms)");
+    }
+
+    // Only solves finished since the last level change count: older ones ran under
+    // different settings.
+    private long recentP99(long now) {
+        long[] recent = new long[SAMPLES];
+        long since = Math.max(now - WINDOW_MS, lastChange);
+        int n = 0;
+        for (int i = 0; i < SAMPLES; i++)
+            if (recordedAt[i] > since) recent[n++] = latencyMs[i];
+        lastSamples = n;
+        if (n == 0) return 0;
+        Arrays.sort(recent, 0, n);
+        return recent[Math.min(n - 1, (int) Math.ceil(n * 0.99) - 1)];
+    }
+}
@@ -0,0 +1,277 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * HTTP load driver for a running RubikWebServer:
+ *
+ *   java -cp bin LoadGenerator [--url=http://localhost:8080] [--endpoints=solve,estimate,state,scramble]
+ *                              [--workload=testcases|scrambles|random] [--concurrency=8]
+ *                              [--rate=0] [--thinkMs=0] [--expectedMs=] [--duration=30] [--warmup=5]
+ *                              [--class=interactive|bulk] [--solveQuery=tier=interactive]
+ *                              [--timeoutMs=30000] [--json=out.json]
+ *
+ * Requests go to the listed endpoints in turn, with cube inputs taken in order from the
+ * workload. Without --rate the run is closed-loop: each of the concurrency users sends a
+ * request, waits for the reply and thinkMs, then sends the next. With --rate it is
+ * open-loop: requests fall due on a fixed schedule of rate per second and are sent over
+ * up to concurrency connections.
+ *
+ * Latency is corrected for coordinated omission. Open-loop latency counts from when a
+ * request was due, not from when a connection came free to send it. Closed-loop latency
+ * is back-filled with the requests a slow reply held up, taking the expected interval
+ * between one user's requests to be thinkMs plus the endpoint's median warm-up latency
+ * (or --expectedMs). The raw service time is reported alongside. Both include failed
+ * requests, a client timeout counting as the time it took to give up.
+ */
+public class LoadGenerator {
+    // Distinct inputs in the scrambles and random workloads.
+    private static final int RANDOM_INPUTS = 1000;
+
+    private static final class Endpoint {
+        final String name;
+        final String path;
+        final boolean post;
+        // From when the request was due, and from when it was actually sent.
+        final LatencyStats latency = new LatencyStats();
+        final LatencyStats service = new LatencyStats();
+        final LatencyStats warmup = new LatencyStats();
+        final Map<String, Long> errors = new TreeMap<>();
+        LatencyStats corrected;
+        long ok;
+        long late;
+
+        Endpoint(String name, String path, boolean post) {
+            this.name = name;
+            this.path = path;
+            this.post = post;
+        }
+
+        synchronized void record(boolean measured, long due, long sent, long done, String error) {
+            if (!measured) {
+                if (error == null) warmup.record(done - sent);
+                return;
+            }
+            // Failures stay in the histograms: under overload the client timeouts and the
+            // server's 429/503 sheds are the slowest part of the tail.
+            latency.record(done - due);
+            service.record(done - sent);
+            // Sent over a millisecond after it was due: the driver ran out of connections.
+            if (sent - due > 1_000_000) late++;
+            if (error != null) errors.merge(error, 1L, Long::sum);
+            else ok++;
+        }
+
+        long errorCount() {
+            long n = 0;
+            for (long v : errors.values()) n += v;
+            return n;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new LinkedHashMap<>();
+        for (String a : args) {
+            if (a.startsWith("--") && a.contains("=")) opts.put(a.substring(2, a.indexOf('=')), a.substring(a.indexOf('=') + 1));
+            else usage();
+        }
+        String url = opts.getOrDefault("url", "http://localhost:8080").replaceAll("/+$", "");
+        int concurrency = Math.max(1, Integer.parseInt(opts.getOrDefault("concurrency", "8")));
+        double rate = Double.parseDouble(opts.getOrDefault("rate", "0"));
+        long thinkNanos = Long.parseLong(opts.getOrDefault("thinkMs", "0")) * 1_000_000;
+        long warmupNanos = (long) (Double.parseDouble(opts.getOrDefault("warmup", "5")) * 1e9);
+        long durationNanos = (long) (Double.parseDouble(opts.getOrDefault("duration", "30")) * 1e9);
+        Duration timeout = Duration.ofMillis(Long.parseLong(opts.getOrDefault("timeoutMs", "30000")));
+        String trafficClass = opts.getOrDefault("class", "bulk");
+        if (!trafficClass.equals("interactive") && !trafficClass.equals("bulk")) usage();
+        String solveQuery = opts.getOrDefault("solveQuery", "");
+        String endpointNames = opts.getOrDefault("endpoints", "solve");
+        String workloadName = opts.getOrDefault("workload", "testcases");
+
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String name : endpointNames.split(",")) {
+            switch (name.trim()) {
+                case "solve":
+                    endpoints.add(new Endpoint("solve", "/api/solve?trace=none" + (solveQuery.isEmpty() ? "" : "&" + solveQuery), true));
+                    break;
+                case "estimate": endpoints.add(new Endpoint("estimate", "/api/estimate", true)); break;
+                case "state": endpoints.add(new Endpoint("state", "/api/state", true)); break;
+                case "scramble": endpoints.add(new Endpoint("scramble", "/api/scramble", false)); break;
+                default: usage();
+            }
+        }
+        List<String> inputs = workload(workloadName);
+        if (inputs.isEmpty()) {
+            System.err.println("Workload " + workloadName + " has no cubes");
+            System.exit(2);
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        String cookie = trafficClass.equals("interactive") ? uiCookie(client, url) : null;
+        boolean open = rate > 0;
+        long period = open ? Math.max(1, (long) (1e9 / rate)) : 0;
+        long start = System.nanoTime() + 100_000_000;
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        AtomicLong next = new AtomicLong();
+
+        System.err.printf("%s against %s: %s, %d connections, %s workload (%d cubes), %.0fs warm-up, %.0fs measured%n",
+                open ? "Open loop at " + rate + "/s" : "Closed loop", url, endpointNames, concurrency,
+                workloadName, inputs.size(), warmupNanos / 1e9, durationNanos / 1e9);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < concurrency; t++) {
+            Thread thread = new Thread(() -> {
+                long due = start;
+                while (true) {
+                    long k = next.getAndIncrement();
+                    if (open) due = start + k * period;
+                    if (due >= end) return;
+                    parkUntil(due);
+                    Endpoint e = endpoints.get((int) (k % endpoints.size()));
+                    String input = inputs.get((int) ((k / endpoints.size()) % inputs.size()));
+                    long sent = System.nanoTime();
+                    String error = send(client, url + e.path, e.post, input, cookie, timeout);
+                    long done = System.nanoTime();
+                    e.record(due >= measureFrom, due, sent, done, error);
+                    if (!open) due = done + thinkNanos;
+                }
+            }, "load-" + t);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread t : threads) t.join();
+
+        double seconds = durationNanos / 1e9;
+        long expected = opts.containsKey("expectedMs") ? (long) (Double.parseDouble(opts.get("expectedMs")) * 1e6) : -1;
+        long totalOk = 0, totalErrors = 0;
+        for (Endpoint e : endpoints) {
+            if (open) e.corrected = e.latency;
+            else {
+                LatencyStats base = e.warmup.count() > 0 ? e.warmup : e.service;
+                long interval = expected >= 0 ? expected : thinkNanos + Math.round(base.percentileMillis(50) * 1e6);
+                e.corrected = e.service.correctedFor(interval);
+            }
+            totalOk += e.ok;
+            totalErrors += e.errorCount();
+            report(e, seconds);
+        }
+        System.err.printf("%-9s %8.1f req/s, %d errors%n", "total", totalOk / seconds, totalErrors);
+        if (opts.containsKey("json")) {
+            writeJson(Paths.get(opts.get("json")), endpoints, open, rate, concurrency, seconds);
+            System.err.println("Wrote " + opts.get("json"));
+        }
+        if (totalOk == 0) System.exit(1);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java LoadGenerator [--url=http://localhost:8080] [--endpoints=solve,estimate,state,scramble]"
+                + " [--workload=testcases|scrambles|random] [--concurrency=8] [--rate=0] [--thinkMs=0] [--expectedMs=]"
+                + " [--duration=30] [--warmup=5] [--class=interactive|bulk] [--solveQuery=...] [--timeoutMs=30000]"
+                + " [--json=out.json]");
+        System.exit(2);
+    }
+
+    /** Nets from testcases/, seeded 25-move scrambles, or seeded uniformly random states. */
+    private static List<String> workload(String name) throws IOException {
+        switch (name) {
+            case "testcases": return Workloads.nets(Paths.get("testcases"));
+            case "scrambles": return Workloads.randomScrambles(RANDOM_INPUTS);
+            case "random": return Workloads.randomStates(RANDOM_INPUTS);
+            default:
+                usage();
+                return null;
+        }
+    }
+
+    private static void parkUntil(long due) {
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+    }
+
+    // The server marks the web UI's solves as interactive by the cookie its pages set; load it like a browser.
+    private static String uiCookie(HttpClient client, String url) throws IOException, InterruptedException {
+        HttpResponse<Void> page = client.send(HttpRequest.newBuilder(URI.create(url + "/")).GET().build(),
+                HttpResponse.BodyHandlers.discarding());
+        for (String c : page.headers().allValues("Set-Cookie"))
+            if (c.startsWith("rubik_ui=")) return c.substring(0, c.indexOf(';') < 0 ? c.length() : c.indexOf(';'));
+        throw new IOException("The server did not set the rubik_ui cookie");
+    }
+
+    // null on a 2xx reply, otherwise the status code or the exception's class name.
+    private static String send(HttpClient client, String url, boolean post, String body, String cookie, Duration timeout) {
+        HttpRequest.Builder b = HttpRequest.newBuilder(URI.create(url)).timeout(timeout);
+        if (cookie != null) b.header("Cookie", cookie);
+        if (post) b.header("Content-Type", "text/plain; charset=utf-8").POST(HttpRequest.BodyPublishers.ofString(body));
+        else b.GET();
+        try {
+            int status = client.send(b.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+            return status / 100 == 2 ? null : String.valueOf(status);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "interrupted";
+        } catch (IOException e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+
+    private static void report(Endpoint e, double seconds) {
+        long errors = e.errorCount();
+        long total = e.ok + errors;
+        System.err.printf("%-9s %8.1f req/s  errors=%5.2f%% %s%n", e.name, e.ok / seconds,
+                total == 0 ? 0 : 100.0 * errors / total, errors == 0 ? "" : e.errors.toString());
+        System.err.printf("          latency  %s%n", e.corrected.summary());
+        System.err.printf("          service  %s%n", e.service.summary());
+        if (e.late > 0) System.err.printf("          %d requests sent late: raise --concurrency%n", e.late);
+    }
+
+    private static void writeJson(Path file, List<Endpoint> endpoints, boolean open, double rate, int concurrency,
+            double seconds) throws IOException {
+        JsonWriter.writeFile(file, w -> {
+            w.beginObject()
+                .field("mode", open ? "open" : "closed")
+                .field("rate", Math.round(rate))
+                .field("concurrency", concurrency)
+                .field("durationMs", Math.round(seconds * 1000))
+                .name("endpoints").beginArray();
+            for (Endpoint e : endpoints) {
+                w.beginObject()
+                    .field("name", e.name)
+                    .field("ok", e.ok)
+                    .field("errors", e.errorCount())
+                    .field("late", e.late)
+                    .field("rpsMilli", Math.round(e.ok / seconds * 1000))
+                    .field("p50Us", micros(e.corrected, 50))
+                    .field("p99Us", micros(e.corrected, 99))
+                    .field("p999Us", micros(e.corrected, 99.9))
+                    .field("maxUs", micros(e.corrected, 100))
+                    .field("serviceP50Us", micros(e.service, 50))
+                    .field("serviceP99Us", micros(e.service, 99))
+                    .field("serviceP999Us", micros(e.service, 99.9))
+                    .name("errorsByType").beginObject();
+                for (Map.Entry<String, Long> err : e.errors.entrySet()) w.field(err.getKey(), err.getValue());
+                w.endObject().endObject();
+            }
+            w.endArray().endObject();
+        });
+    }
+
+    private static long micros(LatencyStats s, double p) {
+        return Math.round(s.percentileMillis(p) * 1000);
+    }
+}
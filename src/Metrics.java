@@ -0,0 +1,212 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Metrics registry rendered in the Prometheus text exposition format. Counters and
+ * histogram buckets are LongAdders, so recording from many threads never contends on a
+ * lock; a labelled series is created once and then found with a lock-free map lookup.
+ * Gauges and externally kept counters are read from suppliers at scrape time.
+ */
+public class Metrics {
+    /** Latency buckets in seconds, from sub-millisecond solves to the longest deadlines. */
+    public static final double[] LATENCY_BUCKETS = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30 };
+
+    private final List<Family> families = new ArrayList<>();
+
+    private abstract static class Family {
+        final String name, help, type;
+        final String[] labelNames;
+
+        Family(String name, String help, String type, String[] labelNames) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelNames = labelNames;
+        }
+
+        String labelString(String[] values) {
+            if (values.length != labelNames.length)
+                throw new IllegalArgumentException(name + " takes " + labelNames.length + " labels");
+            if (values.length == 0) return "";
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(labelNames[i]).append("=\"").append(escape(values[i])).append('"');
+            }
+            return sb.append('}').toString();
+        }
+
+        abstract void write(StringBuilder out);
+    }
+
+    /** A monotonically increasing count per label set. */
+    public static final class Counter extends Family {
+        private final Map<String, LongAdder> series = new ConcurrentHashMap<>();
+
+        Counter(String name, String help, String[] labelNames) {
+            super(name, help, "counter", labelNames);
+        }
+
+        public LongAdder labels(String... values) {
+            String key = labelString(values);
+            LongAdder a = series.get(key);
+            return a != null ? a : series.computeIfAbsent(key, k -> new LongAdder());
+        }
+
+        @Override
+        void write(StringBuilder out) {
+            series.forEach((labels, a) -> sample(out, name, labels, a.sum()));
+        }
+    }
+
+    /** Fixed-bucket histograms per label set. */
+    public static final class Histogram extends Family {
+        private final double[] bounds;
+        private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+        Histogram(String name, String help, double[] bounds, String[] labelNames) {
+            super(name, help, "histogram", labelNames);
+            this.bounds = bounds;
+        }
+
+        public Series labels(String... values) {
+            String key = labelString(values);
+            Series s = series.get(key);
+            return s != null ? s : series.computeIfAbsent(key, k -> new Series(bounds));
+        }
+
+        @Override
+        void write(StringBuilder out) {
+            series.forEach((labels, s) -> {
+                String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+                long cumulative = 0;
+                for (int i = 0; i < bounds.length; i++) {
+                    cumulative += s.buckets[i].sum();
+                    sample(out, name + "_bucket", prefix + "le=\"" + number(bounds[i]) + "\"}", cumulative);
+                }
+                cumulative += s.buckets[bounds.length].sum();
+                sample(out, name + "_bucket", prefix + "le=\"+Inf\"}", cumulative);
+                sample(out, name + "_sum", labels, s.sum.sum());
+                sample(out, name + "_count", labels, cumulative);
+            });
+        }
+    }
+
+    public static final class Series {
+        private final double[] bounds;
+        private final LongAdder[] buckets;
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Series(double[] bounds) {
+            this.bounds = bounds;
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        public void observe(double v) {
+            int i = 0;
+            while (i < bounds.length && v > bounds[i]) i++;
+            buckets[i].increment();
+            sum.add(v);
+        }
+
+        public void observeNanos(long nanos) {
+            observe(nanos / 1e9);
+        }
+    }
+
+    /** Values read when scraped, each with a fixed label set. */
+    private static final class Sampled extends Family {
+        private final Map<String, DoubleSupplier> series = new ConcurrentHashMap<>();
+
+        Sampled(String name, String help, String type, String[] labelNames) {
+            super(name, help, type, labelNames);
+        }
+
+        @Override
+        void write(StringBuilder out) {
+            series.forEach((labels, s) -> {
+                double v = s.getAsDouble();
+                if (!Double.isNaN(v)) sample(out, name, labels, v);
+            });
+        }
+    }
+
+    public synchronized Counter counter(String name, String help, String... labelNames) {
+        return add(new Counter(name, help, labelNames));
+    }
+
+    public synchronized Histogram histogram(String name, String help, double[] bounds, String... labelNames) {
+        return add(new Histogram(name, help, bounds, labelNames));
+    }
+
+    /** A gauge series; a NaN reading leaves the sample out. */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        sampled(name, help, "gauge", value, labels);
+    }
+
+    /** A counter kept elsewhere (an AtomicLong, say), read at scrape time. */
+    public void counterFunc(String name, String help, DoubleSupplier value, String... labels) {
+        sampled(name, help, "counter", value, labels);
+    }
+
+    /** Counters kept elsewhere that make up one family, one series per value of a single label. */
+    public synchronized void counterFunc(String name, String help, String labelName, Map<String, DoubleSupplier> series) {
+        Sampled f = add(new Sampled(name, help, "counter", new String[] { labelName }));
+        series.forEach((value, s) -> f.series.put(f.labelString(new String[] { value }), s));
+    }
+
+    // labels alternate name, value. Later series of a family must repeat its help and type.
+    private synchronized void sampled(String name, String help, String type, DoubleSupplier value, String[] labels) {
+        String[] names = new String[labels.length / 2];
+        String[] values = new String[labels.length / 2];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = labels[2 * i];
+            values[i] = labels[2 * i + 1];
+        }
+        Sampled f = null;
+        for (Family existing : families)
+            if (existing.name.equals(name)) f = (Sampled) existing;
+        if (f == null) f = add(new Sampled(name, help, type, names));
+        else if (!f.help.equals(help) || !f.type.equals(type))
+            throw new IllegalArgumentException("Metric " + name + " registered with a different help or type");
+        f.series.put(f.labelString(values), value);
+    }
+
+    private <F extends Family> F add(F f) {
+        for (Family existing : families)
+            if (existing.name.equals(f.name)) throw new IllegalArgumentException("Duplicate metric " + f.name);
+        families.add(f);
+        return f;
+    }
+
+    /** The whole registry in the text exposition format (version 0.0.4). */
+    public synchronized String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        for (Family f : families) {
+            out.append("# HELP ").append(f.name).append(' ').append(f.help).append('\n');
+            out.append("# TYPE ").append(f.name).append(' ').append(f.type).append('\n');
+            f.write(out);
+        }
+        return out.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double v) {
+        out.append(name).append(labels).append(' ').append(number(v)).append('\n');
+    }
+
+    private static String number(double v) {
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) return Long.toString((long) v);
+        return Double.toString(v);
+    }
+
+    private static String escape(String v) {
+        return v.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.SplittableRandom;
+
+/**
+ * Uniformly random cube states. Picks the corner and edge permutations, twist and flip
+ * independently and uniformly, then fixes permutation parity by swapping two corners when
+ * it does not match the edges. The swap pairs every odd corner permutation with exactly one
+ * even one, so the result stays uniform over the solvable states, without rejection loops.
+ * The same seed gives the same sequence of states. Only constants of CoordCube are used,
+ * so generating states never builds the solver tables.
+ */
+class RandomCube {
+
+	private final SplittableRandom rnd;
+
+	RandomCube(long seed) {
+		rnd = new SplittableRandom(seed);
+	}
+
+	RandomCube() {
+		rnd = new SplittableRandom();
+	}
+
+	CubieCube next() {
+		CubieCube cc = new CubieCube();
+		cc.setURtoBR(rnd.nextInt(CoordCube.N_URtoBR));
+		cc.setURFtoDLB(rnd.nextInt(CoordCube.N_URFtoDLB));
+		if (cc.edgeParity() != cc.cornerParity()) {
+			Corner c = cc.cp[0];
+			cc.cp[0] = cc.cp[1];
+			cc.cp[1] = c;
+		}
+		cc.setTwist((short) rnd.nextInt(CoordCube.N_TWIST));
+		cc.setFlip((short) rnd.nextInt(CoordCube.N_FLIP));
+		return cc;
+	}
+
+	String nextFacelets() {
+		return next().toFaceCube().to_String();
+	}
+}
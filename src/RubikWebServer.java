@@ -1,22 +1,135 @@
 import com.sun.net.httpserver.*;
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.text.ParseException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+import java.util.zip.GZIPOutputStream;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
 
 public class RubikWebServer {
-    private static int PORT = getPort();
-    private static int getPort() {
+    private static int PORT = envInt("PORT", 8080);
+
+    // Solves are CPU-bound: a fixed pool sized to the cores, behind a bounded admission queue.
+    private static final int SOLVE_THREADS = envInt("SOLVE_THREADS", Runtime.getRuntime().availableProcessors());
+    private static final int SOLVE_QUEUE = envInt("SOLVE_QUEUE", 32);
+    // Each traffic class queues separately and gets threads in proportion to its weight.
+    private static final int INTERACTIVE_QUEUE = envInt("INTERACTIVE_QUEUE", SOLVE_QUEUE);
+    private static final int BULK_QUEUE = envInt("BULK_QUEUE", SOLVE_QUEUE);
+    private static final int INTERACTIVE_WEIGHT = envInt("INTERACTIVE_WEIGHT", 4);
+    private static final int BULK_WEIGHT = envInt("BULK_WEIGHT", 1);
+    // API keys (X-Api-Key) whose requests count as interactive; any other key is bulk.
+    private static final Set<String> INTERACTIVE_API_KEYS = envList("INTERACTIVE_API_KEYS");
+    // The pages set this cookie and the web UI's solves carrying it are interactive. Random per
+    // process unless UI_TOKEN pins it, as instances behind one load balancer need.
+    private static final String UI_COOKIE = "rubik_ui";
+    private static final String UI_TOKEN = uiToken();
+    // Cubes whose phase-1 bound is at most this go to the easy, shortest-first lane.
+    private static final int SCHED_EASY_MAX_BOUND = envInt("SCHED_EASY_MAX_BOUND", 5);
+    // A hard-lane solve that has waited this long is run ahead of the easy lane.
+    private static final int SCHED_HARD_MAX_WAIT_MS = envInt("SCHED_HARD_MAX_WAIT_MS", 1000);
+    // Only used when virtual threads are unavailable (Java < 21).
+    private static final int HTTP_THREADS = envInt("HTTP_THREADS", 64);
+    private static final int MAX_BODY_BYTES = envInt("MAX_BODY_BYTES", 16 * 1024);
+    private static final int RETRY_AFTER_SECONDS = envInt("RETRY_AFTER_SECONDS", 1);
+    private static final int STATIC_MAX_AGE = envInt("STATIC_MAX_AGE", 600);
+    private static final boolean STATIC_WATCH = envInt("STATIC_WATCH", 0) != 0;
+    // Raw TCP listener for BinaryProtocol clients; 0 leaves it off.
+    private static final int BINARY_PORT = envInt("BINARY_PORT", 0);
+    private static final int BINARY_WINDOW = envInt("BINARY_WINDOW", 64);
+    private static final int BINARY_MAX_TIMEOUT_MS = envInt("BINARY_MAX_TIMEOUT_MS", 5 << 10);
+    // Each binary connection holds a thread for its read loop; further connections are refused.
+    private static final int BINARY_CONNECTIONS = envInt("BINARY_CONNECTIONS", 256);
+    private static final int BATCH_IN_FLIGHT = envInt("BATCH_IN_FLIGHT", 2 * SOLVE_THREADS);
+    private static final int BATCH_ITEM_MS = envInt("BATCH_ITEM_MS", 5000);
+    private static final int BATCH_MAX_MS = envInt("BATCH_MAX_MS", 300_000);
+    // Upper bound for deadlineMs on /api/solve, whatever the tier or mode asks for.
+    private static final int SOLVE_MAX_DEADLINE_MS = envInt("SOLVE_MAX_DEADLINE_MS", 10_000);
+    // How long past its deadline an /api/solve caller waits (queueing, a worker's reply) before leaving the search.
+    private static final int SOLVE_WAIT_MARGIN_MS = envInt("SOLVE_WAIT_MARGIN_MS", 5000);
+    private static final int STREAM_DEFAULT_DEADLINE_MS = 2000;
+    private static final int STREAM_MAX_DEADLINE_MS = envInt("STREAM_MAX_DEADLINE_MS", 10000);
+    // Child solver JVMs for /api/solve; 0 solves in this process.
+    private static final int WORKERS = envInt("WORKERS", 0);
+    private static final int WORKER_THREADS = envInt("WORKER_THREADS", Math.max(1, SOLVE_THREADS / Math.max(1, WORKERS)));
+    // p99 solve latency above which the load controller starts degrading solution quality.
+    private static final int LOAD_P99_TARGET_MS = envInt("LOAD_P99_TARGET_MS", 2000);
+    // Rounds of testcases/ solves run at start-up before /readyz reports ready; 0 skips them.
+    private static final int WARMUP_ROUNDS = envInt("WARMUP_ROUNDS", 3);
+    // Random-state scrambles kept ready for /api/scramble; SCRAMBLE_SEED makes the sequence repeatable.
+    private static final int SCRAMBLE_POOL = envInt("SCRAMBLE_POOL", 64);
+    private static final int SCRAMBLE_SEED = envInt("SCRAMBLE_SEED", 0);
+    // Bearer token for /admin/*; the admin endpoints are not served without one.
+    private static final String ADMIN_TOKEN = System.getenv("ADMIN_TOKEN");
+    private static final int ADMIN_JFR_MAX_SECONDS = envInt("ADMIN_JFR_MAX_SECONDS", 300);
+    // Smaller JSON bodies are not worth the gzip header and CPU.
+    private static final int GZIP_MIN_BYTES = 512;
+
+    private static int envInt(String name, int def) {
         try {
-            String env = System.getenv("PORT");
+            String env = System.getenv(name);
             if (env != null && !env.isBlank()) return Integer.parseInt(env.trim());
         } catch (Exception ignored) {}
-        return 8080;
+        return def;
+    }
+
+    private static String uiToken() {
+        String env = System.getenv("UI_TOKEN");
+        if (env != null && !env.isBlank()) return env.trim();
+        byte[] b = new byte[16];
+        new SecureRandom().nextBytes(b);
+        return HexFormat.of().formatHex(b);
+    }
+
+    private static Set<String> envList(String name) {
+        Set<String> values = new HashSet<>();
+        String env = System.getenv(name);
+        if (env != null)
+            for (String v : env.split(","))
+                if (!v.isBlank()) values.add(v.trim());
+        return values;
     }
 
     private static final Path PUBLIC_DIR = Paths.get("public").toAbsolutePath().normalize();
 
+    private static final SolveScheduler SOLVE_POOL = new SolveScheduler(SOLVE_THREADS,
+            new int[] { INTERACTIVE_QUEUE, BULK_QUEUE }, new int[] { INTERACTIVE_WEIGHT, BULK_WEIGHT },
+            SCHED_EASY_MAX_BOUND, SCHED_HARD_MAX_WAIT_MS);
+    private static final WorkerPool WORKER_POOL =
+            WORKERS > 0 ? new WorkerPool(WORKERS, WORKER_THREADS, TableCache.sharedPath()) : null;
+    private static final SolveCoalescer SOLVER = new SolveCoalescer(SOLVE_POOL, WORKER_POOL);
+    private static final LoadController LOAD = new LoadController(
+            () -> SOLVE_POOL.queued() + (WORKER_POOL != null ? WORKER_POOL.queued() : 0),
+            WORKER_POOL != null ? WORKERS * WORKER_THREADS : SOLVE_THREADS, LOAD_P99_TARGET_MS);
+    private static final Warmup WARMUP = new Warmup(Paths.get("testcases"), WORKER_POOL, WARMUP_ROUNDS);
+    private static final ScramblePool SCRAMBLES = new ScramblePool(SCRAMBLE_POOL,
+            SCRAMBLE_SEED != 0 ? new RandomCube(SCRAMBLE_SEED) : new RandomCube(), scrambleSolver());
+
+    private static final AtomicBoolean RECORDING = new AtomicBoolean();
+
+    private static final Metrics METRICS = new Metrics();
+    private static final Metrics.Counter HTTP_REQUESTS = METRICS.counter("rubik_http_requests_total",
+            "HTTP requests by context path and response status", "path", "status");
+    private static final Metrics.Histogram HTTP_LATENCY = METRICS.histogram("rubik_http_request_duration_seconds",
+            "HTTP request handling time by context path", Metrics.LATENCY_BUCKETS, "path");
+    private static final Metrics.Histogram SOLVE_LATENCY = METRICS.histogram("rubik_solve_duration_seconds",
+            "Time /api/solve waited for its solution, queueing included", Metrics.LATENCY_BUCKETS, "class");
+    private static final Metrics.Histogram SEARCH_PHASES = METRICS.histogram("rubik_search_phase_seconds",
+            "Phase-1 and phase-2 search time of solves run with ?stats=1", Metrics.LATENCY_BUCKETS, "phase");
+    private static final Metrics.Histogram SOLUTION_LENGTH = METRICS.histogram("rubik_solution_length_moves",
+            "Length of solutions returned by /api/solve",
+            new double[] { 5, 10, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 28, 30 });
+
     public static void main(String[] args) throws Exception {
         HttpServer server = null;
         int attempts = 0;
@@ -36,119 +149,730 @@ public class RubikWebServer {
             }
         }
 
-        server.createContext("/api/state", RubikWebServer::handleState);
-        server.createContext("/api/solve", RubikWebServer::handleSolve);
-        server.createContext("/", RubikWebServer::handleStatic);
+        registerMetrics();
+        route(server, "/metrics", RubikWebServer::handleMetrics);
+        route(server, "/healthz", RubikWebServer::handleHealth);
+        if (ADMIN_TOKEN != null && !ADMIN_TOKEN.isBlank())
+            route(server, "/admin/jfr", RubikWebServer::handleJfr);
+        route(server, "/readyz", RubikWebServer::handleReady);
+        route(server, "/api/load", RubikWebServer::handleLoad);
+        route(server, "/api/scheduler", RubikWebServer::handleScheduler);
+        route(server, "/api/state", RubikWebServer::handleState);
+        route(server, "/api/estimate", RubikWebServer::handleEstimate);
+        route(server, "/api/scramble", RubikWebServer::handleScramble);
+        route(server, "/api/solve", RubikWebServer::handleSolve);
+        route(server, "/api/solve/stream", RubikWebServer::handleSolveStream);
+        route(server, "/api/solve/batch",
+            new BatchSolveHandler(SOLVE_POOL, Math.max(1, BATCH_IN_FLIGHT), BATCH_ITEM_MS, BATCH_MAX_MS));
+        StaticAssets assets = new StaticAssets(PUBLIC_DIR, STATIC_MAX_AGE);
+        if (STATIC_WATCH) assets.watch();
+        route(server, "/", ex -> {
+            String path = ex.getRequestURI().getPath();
+            if (path.equals("/") || path.endsWith(".html"))
+                ex.getResponseHeaders().add("Set-Cookie",
+                        UI_COOKIE + "=" + UI_TOKEN + "; Path=/api/; HttpOnly; SameSite=Strict");
+            assets.handle(ex);
+        });
 
-        server.setExecutor(null);
-        System.out.println("RubikWebServer running on http://localhost:" + PORT);
+        Executor requests = requestExecutor();
+        server.setExecutor(requests);
+        if (BINARY_PORT > 0) {
+            // Not the HTTP executor: long-lived pipelined connections would take its threads from HTTP requests.
+            Executor connections = new ThreadPoolExecutor(0, Math.max(1, BINARY_CONNECTIONS), 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), daemonThreads("binary"), new ThreadPoolExecutor.AbortPolicy());
+            int bound = new BinarySolveServer(BINARY_PORT, SOLVE_POOL, connections, BINARY_WINDOW, BINARY_MAX_TIMEOUT_MS).start();
+            System.out.println("Binary solve protocol on port " + bound);
+        }
         System.out.println("If port " + PORT + " is already in use, the server will automatically try the next available port.");
+        // Serving first: /healthz and /readyz answer while workers and tables are still coming up.
         server.start();
+        System.out.println("RubikWebServer running on http://localhost:" + PORT);
+        System.out.println("Solve pool: " + SOLVE_THREADS + " threads, queues " + INTERACTIVE_QUEUE
+                + " interactive / " + BULK_QUEUE + " bulk, weights " + INTERACTIVE_WEIGHT + ":" + BULK_WEIGHT);
+        if (WORKER_POOL != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(WORKER_POOL::close));
+            WORKER_POOL.start();
+            System.out.println("Solver workers: " + WORKERS + " processes, " + WORKER_THREADS + " threads each, starting");
+        }
+        WARMUP.start();
+        SCRAMBLES.start();
+    }
+
+    /** Registers a context whose requests are counted and timed under its path. */
+    private static void route(HttpServer server, String path, HttpHandler handler) {
+        server.createContext(path, handler).getFilters().add(new Filter() {
+            @Override
+            public void doFilter(HttpExchange ex, Chain chain) throws IOException {
+                long t0 = System.nanoTime();
+                JfrEvents.HttpRequest event = new JfrEvents.HttpRequest();
+                event.begin();
+                try {
+                    chain.doFilter(ex);
+                } finally {
+                    int status = ex.getResponseCode();
+                    if (event.shouldCommit()) {
+                        event.method = ex.getRequestMethod();
+                        event.context = path;
+                        event.path = ex.getRequestURI().getPath();
+                        event.status = status;
+                        event.commit();
+                    }
+                    HTTP_REQUESTS.labels(path, status < 0 ? "none" : String.valueOf(status)).increment();
+                    HTTP_LATENCY.labels(path).observeNanos(System.nanoTime() - t0);
+                }
+            }
+
+            @Override
+            public String description() {
+                return "metrics";
+            }
+        });
+    }
+
+    // Values that are cheaper to read at scrape time than to keep updated.
+    private static void registerMetrics() {
+        SOLVE_POOL.registerMetrics(METRICS);
+        Map<String, DoubleSupplier> searches = new LinkedHashMap<>();
+        searches.put("started", SOLVER::started);
+        searches.put("joined", SOLVER::joined);
+        METRICS.counterFunc("rubik_solve_searches_total",
+                "Solve coalescer callers: started a new search, or joined one already running for the same cube",
+                "result", searches);
+        METRICS.gauge("rubik_load_level", "Current load degradation level (0 = none)", LOAD::level);
+        if (WORKER_POOL != null)
+            METRICS.gauge("rubik_workers_live", "Solver workers connected and taking requests", WORKER_POOL::live);
+        if (WORKER_POOL != null)
+            METRICS.gauge("rubik_worker_queue_depth", "Requests sent to solver workers beyond their threads",
+                    WORKER_POOL::queued);
+        // Read before the tables exist, these would trigger a build; they stay absent until then.
+        METRICS.gauge("rubik_tables_bytes", "Memory held by the move and pruning tables",
+                () -> TableCache.initNanos() < 0 ? Double.NaN : TableCache.tableBytes());
+        METRICS.gauge("rubik_tables_init_seconds", "Time taken to build or load the tables",
+                () -> TableCache.initNanos() < 0 ? Double.NaN : TableCache.initNanos() / 1e9);
+        METRICS.gauge("rubik_tables_loaded_from_file", "1 if the tables came from the TABLE_CACHE file, 0 if built",
+                () -> TableCache.initNanos() < 0 ? Double.NaN : TableCache.loadedFromFile() ? 1 : 0);
+        METRICS.gauge("rubik_scramble_pool_available", "Scrambles ready to serve from /api/scramble",
+                SCRAMBLES::available);
+        METRICS.counterFunc("rubik_scrambles_generated_total", "Scrambles added to the /api/scramble pool",
+                SCRAMBLES::generated);
+        METRICS.gauge("rubik_ready", "1 once the start-up warm-up has finished", () -> WARMUP.isReady() ? 1 : 0);
+        METRICS.gauge("rubik_jvm_heap_used_bytes", "Heap in use",
+                () -> Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+    }
+
+    private static void handleMetrics(HttpExchange ex) throws IOException {
+        byte[] body = METRICS.scrape().getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        ex.sendResponseHeaders(200, body.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * Records the JVM with Flight Recorder for ?seconds= (default 30) and returns the .jfr
+     * file. Uses the JDK "profile" settings (or ?settings=default) plus every rubik.* event.
+     * Needs "Authorization: Bearer $ADMIN_TOKEN"; one recording at a time.
+     */
+    private static void handleJfr(HttpExchange ex) throws IOException {
+        if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
+            sendError(ex, 405, "Use POST");
+            return;
+        }
+        String auth = ex.getRequestHeaders().getFirst("Authorization");
+        byte[] expected = ("Bearer " + ADMIN_TOKEN).getBytes(StandardCharsets.UTF_8);
+        if (auth == null || !MessageDigest.isEqual(expected, auth.trim().getBytes(StandardCharsets.UTF_8))) {
+            ex.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            sendError(ex, 401, "Unauthorized");
+            return;
+        }
+        long seconds;
+        Configuration config;
+        try {
+            seconds = Long.parseLong(queryParam(ex, "seconds", "30"));
+            if (seconds < 1 || seconds > ADMIN_JFR_MAX_SECONDS)
+                throw new IllegalArgumentException("seconds must be between 1 and " + ADMIN_JFR_MAX_SECONDS);
+            String settings = queryParam(ex, "settings", "profile");
+            if (!settings.equals("profile") && !settings.equals("default"))
+                throw new IllegalArgumentException("settings must be profile or default");
+            config = Configuration.getConfiguration(settings);
+        } catch (NumberFormatException e) {
+            sendError(ex, 400, "seconds must be an integer");
+            return;
+        } catch (IllegalArgumentException e) {
+            sendError(ex, 400, e.getMessage());
+            return;
+        } catch (ParseException e) {
+            sendError(ex, 500, "JFR settings unavailable");
+            return;
+        }
+        if (!RECORDING.compareAndSet(false, true)) {
+            sendError(ex, 409, "A recording is already running");
+            return;
+        }
+        Path file = null;
+        try (Recording recording = new Recording(config)) {
+            recording.setName("admin-" + System.currentTimeMillis());
+            for (String event : new String[] { "rubik.TableInit", "rubik.Solve", "rubik.HttpRequest", "rubik.CacheLookup" })
+                recording.enable(event).withThreshold(Duration.ZERO);
+            recording.start();
+            try {
+                Thread.sleep(seconds * 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            recording.stop();
+            file = Files.createTempFile("rubik-", ".jfr");
+            recording.dump(file);
+            ex.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            ex.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + recording.getName() + ".jfr\"");
+            ex.sendResponseHeaders(200, Files.size(file));
+            try (OutputStream os = ex.getResponseBody()) {
+                Files.copy(file, os);
+            }
+        } finally {
+            RECORDING.set(false);
+            if (file != null) Files.deleteIfExists(file);
+        }
+    }
+
+    /** Liveness: the process is up and serving HTTP. */
+    private static void handleHealth(HttpExchange ex) throws IOException {
+        sendJson(ex, 200, w -> w.beginObject().field("status", "ok").endObject());
+    }
+
+    /**
+     * Readiness: 503 until the start-up warm-up has built the tables and warmed the JIT,
+     * and with WORKERS while no worker is connected.
+     */
+    private static void handleReady(HttpExchange ex) throws IOException {
+        int live = WORKER_POOL != null ? WORKER_POOL.live() : 0;
+        boolean ready = WARMUP.isReady() && (WORKER_POOL == null || live > 0);
+        sendJson(ex, ready ? 200 : 503, w -> {
+            w.beginObject().field("ready", ready).field("stage", WARMUP.stage());
+            if (WARMUP.isReady()) w.field("warmupMs", WARMUP.readyAfterMs());
+            if (WORKER_POOL != null) w.field("workers", live).field("workersConfigured", WORKER_POOL.size());
+            w.endObject();
+        });
+    }
+
+    private static void handleLoad(HttpExchange ex) throws IOException {
+        sendJson(ex, 200, w -> w.beginObject()
+            .field("level", LOAD.level())
+            .field("queued", LOAD.queued())
+            .field("p99Ms", LOAD.p99Ms())
+            .field("levelChanges", LOAD.changes())
+            .endObject());
+    }
+
+    /** Per-traffic-class queue depth, throughput and recent latency of the local solve pool. */
+    private static void handleScheduler(HttpExchange ex) throws IOException {
+        sendJson(ex, 200, w -> {
+            w.beginObject().field("threads", SOLVE_POOL.threads()).field("queued", SOLVE_POOL.queued())
+                .name("classes").beginObject();
+            for (SolveScheduler.TrafficClass c : SolveScheduler.TrafficClass.values()) {
+                SolveScheduler.ClassStats s = SOLVE_POOL.stats(c);
+                w.name(c.label()).beginObject()
+                    .field("weight", s.weight)
+                    .field("capacity", s.capacity)
+                    .field("queued", s.queued)
+                    .field("easyQueued", s.easyQueued)
+                    .field("hardQueued", s.hardQueued)
+                    .field("running", s.running)
+                    .field("submitted", s.submitted)
+                    .field("rejected", s.rejected)
+                    .field("easyRun", s.easyRun)
+                    .field("hardRun", s.hardRun)
+                    .field("waitP50Us", s.waitP50Us)
+                    .field("waitP99Us", s.waitP99Us)
+                    .field("latencyP50Us", s.latencyP50Us)
+                    .field("latencyP99Us", s.latencyP99Us)
+                    .endObject();
+            }
+            w.endObject().endObject();
+        });
+    }
+
+    private static void writeStats(JsonWriter w, SearchStats s) throws IOException {
+        if (s == null) {
+            w.nullValue();
+            return;
+        }
+        w.beginObject().name("phase1NodesByDepth").beginArray();
+        for (int d = 1; d <= s.maxPhase1Depth(); d++) w.value(s.phase1NodesByDepth[d]);
+        w.endArray()
+            .field("phase1Nodes", s.phase1Nodes())
+            .field("phase1Candidates", s.phase1Candidates)
+            .field("phase2Nodes", s.phase2Nodes)
+            .field("rejectedByCornerPrune", s.rejectedByCornerPrune)
+            .field("rejectedByEdgePrune", s.rejectedByEdgePrune)
+            .field("depthPhase1", s.depthPhase1)
+            .field("depthPhase2", s.depthPhase2)
+            .field("phase1Nanos", s.phase1Nanos())
+            .field("phase2Nanos", s.phase2Nanos)
+            .endObject();
+    }
+
+    /**
+     * The traffic class of a solve request. The web UI is interactive: its pages set the
+     * rubik_ui cookie, which the browser sends back with every solve, whether or not API
+     * keys are configured. Other callers are interactive only with an X-Api-Key listed in
+     * INTERACTIVE_API_KEYS; nothing a script can put in a header or the query claims it.
+     */
+    private static SolveScheduler.TrafficClass trafficClass(HttpExchange ex) {
+        if (fromUi(ex)) return SolveScheduler.TrafficClass.INTERACTIVE;
+        String key = ex.getRequestHeaders().getFirst("X-Api-Key");
+        return key != null && INTERACTIVE_API_KEYS.contains(key.trim())
+            ? SolveScheduler.TrafficClass.INTERACTIVE : SolveScheduler.TrafficClass.BULK;
+    }
+
+    private static boolean fromUi(HttpExchange ex) {
+        List<String> headers = ex.getRequestHeaders().get("Cookie");
+        if (headers == null) return false;
+        byte[] expected = UI_TOKEN.getBytes(StandardCharsets.UTF_8);
+        for (String header : headers)
+            for (String cookie : header.split(";")) {
+                String c = cookie.trim();
+                if (c.startsWith(UI_COOKIE + "=") && MessageDigest.isEqual(expected,
+                        c.substring(UI_COOKIE.length() + 1).getBytes(StandardCharsets.UTF_8)))
+                    return true;
+            }
+        return false;
     }
 
     private static void handleState(HttpExchange ex) throws IOException {
         if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
-            sendJson(ex, 405, "{\"error\":\"Use POST\"}");
+            sendError(ex, 405, "Use POST");
             return;
         }
-        String body = readAll(ex.getRequestBody());
         try {
+            String body = readBody(ex);
             String facelets = CubeInputUtil.parseToFacelets(body);
-            sendJson(ex, 200, "{\"facelets\":\"" + JsonUtil.esc(facelets) + "\"}");
+            sendJson(ex, 200, w -> w.beginObject().field("facelets", facelets).endObject());
+        } catch (BodyTooLargeException e) {
+            sendError(ex, 413, "Request body exceeds " + MAX_BODY_BYTES + " bytes");
+        } catch (IllegalArgumentException e) {
+            sendError(ex, 400, e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendError(ex, 500, "Internal error");
+        }
+    }
+
+    /**
+     * Pruning-table lower bounds for a cube, without searching: a quick difficulty estimate
+     * and the scheduler lane a solve of it would take.
+     */
+    private static void handleEstimate(HttpExchange ex) throws IOException {
+        if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
+            sendError(ex, 405, "Use POST");
+            return;
+        }
+        try {
+            String facelets = CubeInputUtil.parseToFacelets(readBody(ex));
+            long t0 = System.nanoTime();
+            Search.Estimate est = Search.estimate(facelets);
+            long micros = (System.nanoTime() - t0) / 1000;
+            sendJson(ex, 200, w -> {
+                w.beginObject().field("facelets", facelets).field("phase1", est.phase1);
+                if (est.phase2 >= 0) w.field("phase2", est.phase2);
+                w.field("lowerBound", est.lowerBound())
+                    .field("lane", SOLVE_POOL.isEasy(est.phase1) ? "easy" : "hard")
+                    .field("micros", micros)
+                    .endObject();
+            });
+        } catch (BodyTooLargeException e) {
+            sendError(ex, 413, "Request body exceeds " + MAX_BODY_BYTES + " bytes");
         } catch (IllegalArgumentException e) {
-            sendJson(ex, 400, "{\"error\":\"" + JsonUtil.esc(e.getMessage()) + "\"}");
+            sendError(ex, 400, e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
-            sendJson(ex, 500, "{\"error\":\"Internal error\"}");
+            sendError(ex, 500, "Internal error");
         }
     }
 
+    /**
+     * A scramble to a uniformly random state, taken from the pre-filled pool. Never waits on
+     * a search: an empty pool answers 503 with Retry-After.
+     */
+    private static void handleScramble(HttpExchange ex) throws IOException {
+        if (!"GET".equalsIgnoreCase(ex.getRequestMethod())) {
+            sendError(ex, 405, "Use GET");
+            return;
+        }
+        ScramblePool.Scramble s = SCRAMBLES.poll();
+        if (s == null) {
+            sendUnavailable(ex, "No scramble ready yet, retry shortly");
+            return;
+        }
+        ex.getResponseHeaders().set("Cache-Control", "no-store");
+        sendJson(ex, 200, w -> w.beginObject()
+            .field("scramble", s.text())
+            .field("moves", s.moves)
+            .field("length", s.moves.size())
+            .field("facelets", s.facelets)
+            .endObject());
+    }
+
+    // Refills are bulk solves like any other, queued on the scheduler (and so on the workers,
+    // when there are any), and wait while the load controller is degrading /api/solve.
+    private static ScramblePool.Solver scrambleSolver() {
+        SolveOptions options = new SolveOptions("scramble", 21, SOLVE_MAX_DEADLINE_MS, SolveOptions.Mode.FIRST);
+        return f -> {
+            if (WORKER_POOL != null) WORKER_POOL.started().join();
+            while (LOAD.level() > 0) Thread.sleep(1000);
+            SolveCoalescer.Ticket ticket = SOLVER.join(f, options, SolveScheduler.TrafficClass.BULK);
+            try {
+                return ticket.await();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } finally {
+                ticket.leave();
+            }
+        };
+    }
+
     private static void handleSolve(HttpExchange ex) throws IOException {
         if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
-            sendJson(ex, 405, "{\"error\":\"Use POST\"}");
+            sendError(ex, 405, "Use POST");
             return;
         }
-        String body = readAll(ex.getRequestBody());
         try {
+            String traceMode = queryParam(ex, "trace", "full");
+            if (!traceMode.equals("full") && !traceMode.equals("delta") && !traceMode.equals("none"))
+                throw new IllegalArgumentException("trace must be full, delta or none");
+            SolveOptions requested = SolveOptions.parse(queryParam(ex, "tier", null), queryParam(ex, "maxLength", null),
+                    queryParam(ex, "deadlineMs", null), queryParam(ex, "mode", null), SOLVE_MAX_DEADLINE_MS);
+            SolveScheduler.TrafficClass trafficClass = trafficClass(ex);
+            boolean wantStats = queryParam(ex, "stats", "0").equals("1");
+            String body = readBody(ex);
             String facelets = CubeInputUtil.parseToFacelets(body);
 
-            String raw = Search.solution(facelets, 21, 5, false);
-            if (raw == null) raw = "";
-            raw = raw.trim();
-
-            if (raw.startsWith("Error")) {
-                sendJson(ex, 400, "{\"error\":\"" + JsonUtil.esc(raw) + "\"}");
+            int loadLevel = LOAD.level();
+            SolveOptions options = LOAD.adjust(requested, loadLevel);
+            ex.getResponseHeaders().set("X-Load-Level", String.valueOf(loadLevel));
+            long t0 = System.nanoTime();
+            SolveCoalescer.Ticket ticket = SOLVER.join(facelets, options, trafficClass, wantStats);
+            SolveResult result;
+            try {
+                result = ticket.await(options.deadlineMs + SOLVE_WAIT_MARGIN_MS, TimeUnit.MILLISECONDS);
+                long waited = System.nanoTime() - t0;
+                LOAD.record(waited / 1_000_000);
+                SOLVE_LATENCY.labels(trafficClass.label()).observeNanos(waited);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RejectedExecutionException) {
+                    LOAD.shed(options.deadlineMs);
+                    sendBusy(ex);
+                    return;
+                }
+                if (e.getCause() instanceof TimeoutException) {
+                    LOAD.record((System.nanoTime() - t0) / 1_000_000);
+                    sendUnavailable(ex, "Solver worker did not answer, retry shortly");
+                    return;
+                }
+                throw e;
+            } catch (TimeoutException e) {
+                LOAD.record((System.nanoTime() - t0) / 1_000_000);
+                // Leaving below cancels the search if no other caller is still waiting on it.
+                sendUnavailable(ex, "Solve did not finish in time, retry shortly");
+                return;
+            } finally {
+                ticket.leave();
+            }
+            if (!result.ok()) {
+                // Only a bad cube is the client's fault. Running out of time is ours (a busy server
+                // caps deadlines), so it is retryable; no solution within maxLength needs a longer one.
+                if (result.status.invalidCube()) sendError(ex, 400, result.status.error());
+                else if (result.status == SolveResult.Status.NO_SOLUTION) sendError(ex, 422, result.status.error());
+                else sendUnavailable(ex, result.status.error());
                 return;
             }
 
-            List<String> moves = raw.isEmpty() ? Collections.emptyList() : Arrays.asList(raw.split("\\s+"));
-            List<String> trace = CubeTraceUtil.trace(facelets, moves);
-
-            String json = "{"
-                + "\"facelets\":\"" + JsonUtil.esc(facelets) + "\","
-                + "\"solution\":\"" + JsonUtil.esc(raw.isEmpty() ? "Already solved" : raw) + "\","
-                + "\"moves\":" + JsonUtil.arr(moves) + ","
-                + "\"trace\":" + JsonUtil.arr(trace)
-                + "}";
+            List<String> moves = result.moveList();
+            SearchStats stats = result.stats;
+            SOLUTION_LENGTH.labels().observe(result.length);
+            if (stats != null) {
+                SEARCH_PHASES.labels("phase1").observeNanos(stats.phase1Nanos());
+                SEARCH_PHASES.labels("phase2").observeNanos(stats.phase2Nanos);
+            }
 
-            sendJson(ex, 200, json);
+            String solution = result.length == 0 ? "Already solved" : result.text();
+            sendJson(ex, 200, w -> {
+                w.beginObject()
+                    .field("facelets", facelets)
+                    .field("solution", solution)
+                    .field("moves", moves)
+                    .field("length", result.length);
+                // Whether a search for shorter solutions finished rather than hit the deadline.
+                if (options.mode != SolveOptions.Mode.FIRST) w.field("exhausted", result.exhausted);
+                w.name("options").beginObject()
+                    .field("tier", options.tier)
+                    .field("mode", options.modeName())
+                    .field("maxLength", options.maxLength)
+                    .field("deadlineMs", options.deadlineMs)
+                    .field("loadLevel", loadLevel)
+                    .endObject();
+                if (traceMode.equals("full")) CubeTraceUtil.writeTrace(w.name("trace"), facelets, moves);
+                else if (traceMode.equals("delta")) w.field("deltas", CubeTraceUtil.deltas(facelets, moves));
+                if (wantStats) writeStats(w.name("stats"), stats);
+                w.endObject();
+            });
+        } catch (BodyTooLargeException e) {
+            sendError(ex, 413, "Request body exceeds " + MAX_BODY_BYTES + " bytes");
         } catch (IllegalArgumentException e) {
-            sendJson(ex, 400, "{\"error\":\"" + JsonUtil.esc(e.getMessage()) + "\"}");
+            sendError(ex, 400, e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
-            sendJson(ex, 500, "{\"error\":\"Internal error\"}");
+            sendError(ex, 500, "Internal error");
         }
     }
 
-    private static void handleStatic(HttpExchange ex) throws IOException {
-        String path = ex.getRequestURI().getPath();
-        if (path == null || path.isEmpty() || "/".equals(path)) path = "/index.html";
+    /**
+     * Server-Sent Events solve: emits a "solution" event each time a shorter solution is
+     * found, "progress" events with the phase-1 depth and node count, and a final "done"
+     * (or "error") event. The search stops as soon as a write to the client fails.
+     * Input is the POST body, or the "cube" query parameter for GET (EventSource).
+     * With mode=pipeline the phase-1 moves go out first as a "phase1" event, followed
+     * by "phase2" events for the first and each shorter remaining suffix.
+     */
+    private static void handleSolveStream(HttpExchange ex) throws IOException {
+        String method = ex.getRequestMethod();
+        boolean get = "GET".equalsIgnoreCase(method);
+        if (!get && !"POST".equalsIgnoreCase(method)) {
+            sendError(ex, 405, "Use GET or POST");
+            return;
+        }
+        String facelets;
+        long deadlineMs;
+        boolean pipeline;
+        SolveScheduler.TrafficClass trafficClass;
+        try {
+            trafficClass = trafficClass(ex);
+            String mode = queryParam(ex, "mode", "improve");
+            if (!mode.equals("improve") && !mode.equals("pipeline"))
+                throw new IllegalArgumentException("mode must be improve or pipeline");
+            pipeline = mode.equals("pipeline");
+            String input = get ? queryParam(ex, "cube", "") : readBody(ex);
+            facelets = CubeInputUtil.parseToFacelets(input);
+            deadlineMs = Long.parseLong(queryParam(ex, "deadlineMs", String.valueOf(STREAM_DEFAULT_DEADLINE_MS)));
+            deadlineMs = Math.max(1, Math.min(deadlineMs, STREAM_MAX_DEADLINE_MS));
+        } catch (BodyTooLargeException e) {
+            sendError(ex, 413, "Request body exceeds " + MAX_BODY_BYTES + " bytes");
+            return;
+        } catch (IllegalArgumentException e) {
+            sendError(ex, 400, e.getMessage());
+            return;
+        }
 
-        Path file = PUBLIC_DIR.resolve(path.substring(1)).normalize();
-        if (!file.startsWith(PUBLIC_DIR)) {
-            sendText(ex, 403, "Forbidden", "text/plain; charset=utf-8");
+        long deadline = System.currentTimeMillis() + deadlineMs;
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            SOLVE_POOL.execute(() -> {
+                try {
+                    streamSolve(ex, facelets, deadline, pipeline);
+                    done.complete(null);
+                } catch (Throwable t) {
+                    done.completeExceptionally(t);
+                }
+            }, SolveScheduler.UNKNOWN_COST, trafficClass);
+        } catch (RejectedExecutionException e) {
+            sendBusy(ex);
             return;
         }
-        if (!Files.exists(file) || Files.isDirectory(file)) {
-            sendText(ex, 404, "Not Found", "text/plain; charset=utf-8");
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // The client going away mid-stream is expected; anything else is a bug.
+            if (!(e.getCause() instanceof IOException)) e.getCause().printStackTrace();
+        } finally {
+            ex.close();
+        }
+    }
+
+    private static void streamSolve(HttpExchange ex, String facelets, long deadline, boolean pipeline)
+            throws IOException {
+        long t0 = System.nanoTime();
+        Search search = new Search();
+        try (SseStream sse = SseStream.open(ex)) {
+            Search.PipelineListener listener = new Search.PipelineListener() {
+                @Override
+                public void onPhase1(SolveResult phase1) {
+                    send("phase1", w -> w.beginObject()
+                        .field("moves", phase1.moveList())
+                        .field("length", phase1.length)
+                        .field("elapsedMs", (System.nanoTime() - t0) / 1_000_000)
+                        .endObject());
+                }
+
+                @Override
+                public void onSolution(SolveResult solution) {
+                    send(pipeline ? "phase2" : "solution", w -> w.beginObject()
+                        .field("solution", solution.text())
+                        .field("moves", solution.moveList())
+                        .field("length", solution.length)
+                        .field("elapsedMs", (System.nanoTime() - t0) / 1_000_000)
+                        .endObject());
+                }
+
+                @Override
+                public void onProgress(int depthPhase1, long nodes) {
+                    send("progress", w -> w.beginObject()
+                        .field("depth", depthPhase1)
+                        .field("nodes", nodes)
+                        .field("elapsedMs", (System.nanoTime() - t0) / 1_000_000)
+                        .endObject());
+                }
+
+                private void send(String event, JsonWriter.Body data) {
+                    try {
+                        sse.send(event, data);
+                    } catch (IOException e) {
+                        search.cancel();
+                    }
+                }
+            };
+            SolveResult best = pipeline
+                ? search.solvePipelined(facelets, 21, deadline, listener)
+                : search.solveImproving(facelets, 21, deadline, listener);
+            if (search.isCancelled()) return;
+            if (!best.ok()) {
+                sse.send("error", w -> w.beginObject().field("error", best.status.error()).endObject());
+                return;
+            }
+            sse.send("done", w -> w.beginObject()
+                .field("solution", best.text())
+                .field("moves", best.moveList())
+                .field("length", best.length)
+                .field("phase1Length", best.depthPhase1)
+                .field("exhausted", search.exhausted)
+                .field("nodes", search.nodes)
+                .field("elapsedMs", (System.nanoTime() - t0) / 1_000_000)
+                .endObject());
+        }
+    }
+
+    private static void sendBusy(HttpExchange ex) throws IOException {
+        ex.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+        sendError(ex, 429, "Solver is busy, retry shortly");
+    }
+
+    /** 503 with Retry-After: the server, not the request, is why there is no answer. */
+    private static void sendUnavailable(HttpExchange ex, String message) throws IOException {
+        ex.getResponseHeaders().set("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+        sendError(ex, 503, message);
+    }
+
+    /**
+     * One virtual thread per request when the runtime has them (Java 21+), otherwise
+     * a fixed platform-thread pool. Either way no request runs on the dispatcher thread.
+     */
+    private static Executor requestExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(HTTP_THREADS, daemonThreads("http"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    static void sendError(HttpExchange ex, int status, String message) throws IOException {
+        // Headers already sent (a response that failed part way): a second status line would corrupt it.
+        if (ex.getResponseCode() != -1) {
+            ex.close();
             return;
         }
+        sendJson(ex, status, w -> w.beginObject().field("error", message).endObject());
+    }
 
-        String ct = contentType(file.getFileName().toString());
-        byte[] data = Files.readAllBytes(file);
-        ex.getResponseHeaders().set("Content-Type", ct);
-        ex.sendResponseHeaders(200, data.length);
-        try (OutputStream os = ex.getResponseBody()) { os.write(data); }
+    /**
+     * Writes the body through a pooled {@link JsonWriter}. Bodies that fit its buffer go out
+     * with a Content-Length; larger ones, and gzip-compressed ones, stream out chunked.
+     */
+    private static void sendJson(HttpExchange ex, int status, JsonWriter.Body body) throws IOException {
+        Headers h = ex.getResponseHeaders();
+        h.set("Content-Type", "application/json; charset=utf-8");
+        boolean gzip = StaticAssets.acceptsGzip(ex);
+        JsonWriter w = JsonWriter.acquire();
+        try {
+            w.reset(() -> openChunked(ex, status, gzip));
+            try {
+                body.writeTo(w);
+            } catch (IOException | RuntimeException e) {
+                // Spilled means the headers went out with the first chunk; end the response here.
+                if (w.spilled()) ex.close();
+                throw e;
+            }
+            if (!w.spilled()) {
+                if (gzip && w.size() >= GZIP_MIN_BYTES) {
+                    try (OutputStream os = openChunked(ex, status, true)) { os.write(w.buffer(), 0, w.size()); }
+                    return;
+                }
+                ex.sendResponseHeaders(status, w.size());
+                try (OutputStream os = ex.getResponseBody()) { os.write(w.buffer(), 0, w.size()); }
+                return;
+            }
+            w.finish();
+        } finally {
+            JsonWriter.release(w);
+        }
     }
 
-    private static String contentType(String name) {
-        String n = name.toLowerCase(Locale.ROOT);
-        if (n.endsWith(".html")) return "text/html; charset=utf-8";
-        if (n.endsWith(".css")) return "text/css; charset=utf-8";
-        if (n.endsWith(".js")) return "application/javascript; charset=utf-8";
-        if (n.endsWith(".txt")) return "text/plain; charset=utf-8";
-        return "application/octet-stream";
+    private static OutputStream openChunked(HttpExchange ex, int status, boolean gzip) throws IOException {
+        if (gzip) {
+            ex.getResponseHeaders().set("Content-Encoding", "gzip");
+            ex.getResponseHeaders().set("Vary", "Accept-Encoding");
+        }
+        ex.sendResponseHeaders(status, 0);
+        return gzip ? new GZIPOutputStream(ex.getResponseBody(), 4096) : ex.getResponseBody();
     }
 
-    private static void sendJson(HttpExchange ex, int status, String json) throws IOException {
-        byte[] data = json.getBytes(StandardCharsets.UTF_8);
-        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
-        ex.sendResponseHeaders(status, data.length);
-        try (OutputStream os = ex.getResponseBody()) { os.write(data); }
+    static String queryParam(HttpExchange ex, String name, String def) {
+        String q = ex.getRequestURI().getRawQuery();
+        if (q == null) return def;
+        for (String pair : q.split("&")) {
+            int eq = pair.indexOf('=');
+            String k = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            if (k.equals(name)) return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+        }
+        return def;
     }
 
-    private static void sendText(HttpExchange ex, int status, String text, String contentType) throws IOException {
-        byte[] data = text.getBytes(StandardCharsets.UTF_8);
-        ex.getResponseHeaders().set("Content-Type", contentType);
-        ex.sendResponseHeaders(status, data.length);
-        try (OutputStream os = ex.getResponseBody()) { os.write(data); }
+    private static String readBody(HttpExchange ex) throws IOException {
+        String declared = ex.getRequestHeaders().getFirst("Content-Length");
+        if (declared != null) {
+            try {
+                if (Long.parseLong(declared.trim()) > MAX_BODY_BYTES) throw new BodyTooLargeException();
+            } catch (NumberFormatException ignored) {}
+        }
+        return readAll(ex.getRequestBody(), MAX_BODY_BYTES);
     }
 
-    private static String readAll(InputStream is) throws IOException {
+    private static String readAll(InputStream is, int limit) throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         byte[] buf = new byte[8192];
         int r;
-        while ((r = is.read(buf)) != -1) bos.write(buf, 0, r);
+        while ((r = is.read(buf)) != -1) {
+            if (bos.size() + r > limit) throw new BodyTooLargeException();
+            bos.write(buf, 0, r);
+        }
         return bos.toString(StandardCharsets.UTF_8);
     }
+
+    private static final class BodyTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        BodyTooLargeException() {
+            super("Request body too large");
+        }
+    }
 }
@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Ready-made random-state scrambles. A background thread draws uniformly random states
+ * from {@link RandomCube}, has the {@link Solver} solve each one and stores the inverted
+ * solution, which takes a solved cube to that state. It refills whenever the pool drops
+ * below capacity, one solve at a time, and is idle otherwise; callers only ever take from
+ * the pool and never wait on a search. The solver decides where refills run and when to
+ * hold them back.
+ */
+public class ScramblePool {
+    /** Solves a facelet string, blocking until it is done. */
+    public interface Solver {
+        SolveResult solve(String facelets) throws Exception;
+    }
+
+    public static final class Scramble {
+        public final String facelets;
+        public final List<String> moves;
+
+        Scramble(String facelets, List<String> moves) {
+            this.facelets = facelets;
+            this.moves = moves;
+        }
+
+        public String text() {
+            return String.join(" ", moves);
+        }
+    }
+
+    private final ArrayBlockingQueue<Scramble> pool;
+    private final RandomCube random;
+    private final Solver solver;
+    private volatile long generated;
+
+    public ScramblePool(int capacity, RandomCube random, Solver solver) {
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.random = random;
+        this.solver = solver;
+    }
+
+    public void start() {
+        Thread t = new Thread(this::fill, "scramble-pool");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** A scramble, or null when the pool is empty. */
+    public Scramble poll() {
+        return pool.poll();
+    }
+
+    public int available() {
+        return pool.size();
+    }
+
+    public long generated() {
+        return generated;
+    }
+
+    private void fill() {
+        while (true) {
+            String facelets = random.nextFacelets();
+            SolveResult result;
+            try {
+                result = solver.solve(facelets);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                // Queue full, or workers restarting; try again shortly.
+                System.err.println("Scramble pool: " + e);
+                if (!pause()) return;
+                continue;
+            }
+            // A state the search gave up on is skipped; with a generous deadline that is rare
+            // enough not to skew the distribution.
+            if (result == null || !result.ok()) continue;
+            try {
+                pool.put(new Scramble(facelets, invert(result.moves())));
+                generated++;
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static boolean pause() {
+        try {
+            Thread.sleep(1000);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    /** The moves that undo a solution: reversed, each turned the other way (power p becomes 4 - p). */
+    static List<String> invert(byte[] solution) {
+        List<String> inverse = new ArrayList<>(solution.length);
+        for (int i = solution.length - 1; i >= 0; i--) {
+            int m = solution[i];
+            inverse.add(SolveResult.MOVE_NAMES[m - m % 3 + 2 - m % 3]);
+        }
+        return inverse;
+    }
+}
@@ -1,121 +1,266 @@
+import java.util.Arrays;
 
 public class Search {
 
-	static int[] ax = new int[31];
-	static int[] po = new int[31];
-
-	static int[] flip = new int[31];
-	static int[] twist = new int[31];
-	static int[] slice = new int[31];
-
-	static int[] parity = new int[31];
-	static int[] URFtoDLF = new int[31];
-	static int[] FRtoBR = new int[31];
-	static int[] URtoUL = new int[31];
-	static int[] UBtoDF = new int[31];
-	static int[] URtoDF = new int[31];
-
-	static int[] minDistPhase1 = new int[31];
-	static int[] minDistPhase2 = new int[31];
-
-	static String solutionToString(int length) {
-		String s = "";
-		for (int i = 0; i < length; i++) {
-			switch (ax[i]) {
-				case 0:
-					s += "U";
-					break;
-				case 1:
-					s += "R";
-					break;
-				case 2:
-					s += "F";
-					break;
-				case 3:
-					s += "D";
-					break;
-				case 4:
-					s += "L";
-					break;
-				case 5:
-					s += "B";
-					break;
-			}
-			switch (po[i]) {
-				case 1:
-					s += " ";
-					break;
-				case 2:
-					s += "2 ";
-					break;
-				case 3:
-					s += "' ";
-					break;
+	int[] ax = new int[31];
+	int[] po = new int[31];
+
+	int[] flip = new int[31];
+	int[] twist = new int[31];
+	int[] slice = new int[31];
+
+	int[] parity = new int[31];
+	int[] URFtoDLF = new int[31];
+	int[] FRtoBR = new int[31];
+	int[] URtoUL = new int[31];
+	int[] UBtoDF = new int[31];
+	int[] URtoDF = new int[31];
+
+	int[] minDistPhase1 = new int[31];
+	int[] minDistPhase2 = new int[31];
+
+	private volatile boolean cancelled;
+
+	long nodes;
+	boolean exhausted;
+
+	// Null unless stats were asked for: the hot loops only test it.
+	private SearchStats stats;
+	private Listener listener;
+	private long progressIntervalMs = 250;
+	private long nextProgress;
+
+	/**
+	 * Callbacks from {@link #solveImproving}. They run on the searching thread, between
+	 * node expansions, so they should be quick.
+	 */
+	public interface Listener {
+		void onSolution(SolveResult solution);
+
+		void onProgress(int depthPhase1, long nodes);
+	}
+
+	/**
+	 * The solution as text with a space after every move, " . " between the phases when
+	 * useSeparator is set, or "Error N"; timeOut is in seconds. Callers in this code base
+	 * use the {@link SolveResult} methods instead.
+	 */
+	public static String solution(String facelets, int maxDepth, long timeOut, boolean useSeparator) {
+		return new Search().solve(facelets, maxDepth, timeOut, useSeparator);
+	}
+
+	/**
+	 * Stops a running {@link #solveBy} from another thread; the search then ends with
+	 * {@link SolveResult.Status#CANCELLED}.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
 
+	/** {@link #solution} on this instance. */
+	public String solve(String facelets, int maxDepth, long timeOut, boolean useSeparator) {
+		SolveResult r = solveBy(facelets, maxDepth, System.currentTimeMillis() + (timeOut << 10));
+		if (!r.ok())
+			return r.status.error();
+		return r.length == 0 ? "" : r.text(useSeparator) + " ";
+	}
+
+	/** Solves a cube given as facelets, searching until the deadline (epoch milliseconds). */
+	public SolveResult solveBy(String facelets, int maxDepth, long deadline) {
+		if (!hasNineOfEachColor(facelets))
+			return SolveResult.failed(SolveResult.Status.BAD_COLORS);
+		return solveUntil(new FaceCube(facelets).toCubieCube(), maxDepth, deadline, "facelets");
+	}
+
+	/**
+	 * Keeps searching for shorter solutions until the deadline passes, the search is
+	 * cancelled, or no solution shorter than the best one exists within the two-phase
+	 * search ({@link #exhausted} is then set). Each improvement is reported to the listener.
+	 * Returns the best solution found, or the failure of the first attempt.
+	 */
+	public SolveResult solveImproving(String facelets, int maxDepth, long deadline, Listener listener) {
+		this.listener = listener;
+		this.nextProgress = System.currentTimeMillis() + progressIntervalMs;
+		try {
+			SolveResult best = null;
+			while (true) {
+				SolveResult r = solveBy(facelets, maxDepth, deadline);
+				if (!r.ok()) {
+					exhausted = r.status == SolveResult.Status.NO_SOLUTION;
+					if (best == null)
+						return r;
+					return exhausted ? best.asExhausted() : best;
+				}
+				best = r;
+				if (listener != null)
+					listener.onSolution(r);
+				if (r.length == 0) {
+					exhausted = true;
+					return best.asExhausted();
+				}
+				maxDepth = r.length - 1;
 			}
+		} finally {
+			this.listener = null;
 		}
-		return s;
-	};
-
-	static String solutionToString(int length, int depthPhase1) {
-		String s = "";
-		for (int i = 0; i < length; i++) {
-			switch (ax[i]) {
-				case 0:
-					s += "U";
-					break;
-				case 1:
-					s += "R";
-					break;
-				case 2:
-					s += "F";
-					break;
-				case 3:
-					s += "D";
-					break;
-				case 4:
-					s += "L";
-					break;
-				case 5:
-					s += "B";
-					break;
-			}
-			switch (po[i]) {
-				case 1:
-					s += " ";
-					break;
-				case 2:
-					s += "2 ";
-					break;
-				case 3:
-					s += "' ";
-					break;
+	}
+
+	/** {@link #solvePipelined} callbacks; {@code onSolution} then reports phase-2 suffixes. */
+	public interface PipelineListener extends Listener {
+		void onPhase1(SolveResult phase1);
+	}
 
+	/**
+	 * Commits the phase-1 moves of the first solution found as soon as they are final,
+	 * then keeps looking for a shorter way to finish from the resulting state until the
+	 * deadline. The listener sees the phase-1 prefix once, then the first phase-2 suffix
+	 * and each shorter one. Returns the complete best solution.
+	 */
+	public SolveResult solvePipelined(String facelets, int maxDepth, long deadline, PipelineListener listener) {
+		SolveResult first = solveBy(facelets, maxDepth, deadline);
+		if (!first.ok())
+			return first;
+		int depth1 = first.depthPhase1;
+		byte[] all = first.moves();
+		SolveResult prefix = new SolveResult(SolveResult.Status.OK, Arrays.copyOf(all, depth1), depth1, first.stats);
+		SolveResult suffix = new SolveResult(SolveResult.Status.OK, Arrays.copyOfRange(all, depth1, all.length), 0,
+				first.stats);
+
+		CubieCube cc = new FaceCube(facelets).toCubieCube();
+		for (int i = 0; i < depth1; i++)
+			for (int k = 0; k <= all[i] % 3; k++) {
+				cc.cornerMultiply(CubieCube.moveCube[all[i] / 3]);
+				cc.edgeMultiply(CubieCube.moveCube[all[i] / 3]);
 			}
-			if (i == depthPhase1 - 1)
-				s += ". ";
+		String afterPhase1 = cc.toFaceCube().to_String();
+
+		listener.onPhase1(prefix);
+		listener.onSolution(suffix);
+		exhausted = suffix.length == 0;
+		if (suffix.length > 0) {
+			SolveResult better = solveImproving(afterPhase1, suffix.length - 1, deadline, listener);
+			if (better.ok())
+				suffix = better;
 		}
-		return s;
-	};
+		byte[] moves = Arrays.copyOf(prefix.moves(), depth1 + suffix.length);
+		System.arraycopy(suffix.moves(), 0, moves, depth1, suffix.length);
+		return new SolveResult(SolveResult.Status.OK, moves, depth1, first.stats, exhausted);
+	}
 
-	public static String solution(String facelets, int maxDepth, long timeOut, boolean useSeparator) {
-		int s;
+	/**
+	 * Lower bounds read straight from the pruning tables, without searching: moves needed to
+	 * reach G1, and for a cube already in G1 the moves needed to finish in phase 2.
+	 */
+	public static final class Estimate {
+		public final int phase1;
+		/** -1 unless the cube is already in G1. */
+		public final int phase2;
+
+		Estimate(int phase1, int phase2) {
+			this.phase1 = phase1;
+			this.phase2 = phase2;
+		}
+
+		/** Lower bound on the total two-phase solution length. */
+		public int lowerBound() {
+			return phase1 + Math.max(0, phase2);
+		}
+	}
+
+	/**
+	 * Estimates a cube given as facelets. Throws IllegalArgumentException carrying the
+	 * "Error N" text of the status a solve of an invalid cube would end with.
+	 */
+	public static Estimate estimate(String facelets) {
+		if (!hasNineOfEachColor(facelets))
+			throw new IllegalArgumentException(SolveResult.Status.BAD_COLORS.error());
+		CubieCube cc = new FaceCube(facelets).toCubieCube();
+		int s = cc.verify();
+		if (s != 0)
+			throw new IllegalArgumentException(SolveResult.Status.of(-s).error());
+		return estimate(cc);
+	}
+
+	public static Estimate estimate(CubieCube cc) {
+		CoordCube c = new CoordCube(cc);
+		int slice = c.FRtoBR / 24;
+		int phase1 = Math.max(CoordCube.getPruning(CoordCube.Slice_Flip_Prun, CoordCube.N_SLICE1 * c.flip + slice),
+				CoordCube.getPruning(CoordCube.Slice_Twist_Prun, CoordCube.N_SLICE1 * c.twist + slice));
+		if (phase1 != 0)
+			return new Estimate(phase1, -1);
+		int phase2 = Math.max(
+				CoordCube.getPruning(CoordCube.Slice_URFtoDLF_Parity_Prun,
+						(CoordCube.N_SLICE2 * c.URFtoDLF + c.FRtoBR) * 2 + c.parity),
+				CoordCube.getPruning(CoordCube.Slice_URtoDF_Parity_Prun,
+						(CoordCube.N_SLICE2 * c.URtoDF + c.FRtoBR) * 2 + c.parity));
+		return new Estimate(0, phase2);
+	}
 
+	/** Collects counters into the given stats from now on; null stops collecting. */
+	public void setStats(SearchStats stats) {
+		this.stats = stats;
+	}
+
+	/** The attached stats, or null when none are being collected. */
+	public SearchStats stats() {
+		return stats;
+	}
+
+	public void setProgressInterval(long millis) {
+		progressIntervalMs = millis;
+	}
+
+	/** The "Error 1" check: every facelet is a face letter and each appears nine times. */
+	static boolean hasNineOfEachColor(String facelets) {
 		int[] count = new int[6];
 		try {
 			for (int i = 0; i < 54; i++)
 				count[Color.valueOf(facelets.substring(i, i + 1)).ordinal()]++;
 		} catch (Exception e) {
-			return "Error 1";
+			return false;
 		}
 		for (int i = 0; i < 6; i++)
 			if (count[i] != 9)
-				return "Error 1";
+				return false;
+		return true;
+	}
 
-		FaceCube fc = new FaceCube(facelets);
-		CubieCube cc = fc.toCubieCube();
+	/** Solves a cube given at cubie level, e.g. decoded from packed coordinates, until the deadline. */
+	public SolveResult solveBy(CubieCube cc, int maxDepth, long deadline) {
+		return solveUntil(cc, maxDepth, deadline, "cubie");
+	}
+
+	private SolveResult solveUntil(CubieCube cc, int maxDepth, long deadline, String input) {
+		JfrEvents.Solve event = new JfrEvents.Solve();
+		event.begin();
+		long nodesBefore = nodes;
+		long t0 = stats != null ? System.nanoTime() : 0;
+		SolveResult result = null;
+		try {
+			return result = search(cc, maxDepth, deadline);
+		} finally {
+			if (stats != null)
+				stats.totalNanos += System.nanoTime() - t0;
+			if (event.shouldCommit()) {
+				event.input = input;
+				event.maxDepth = maxDepth;
+				event.length = result == null ? -1 : result.length;
+				event.depthPhase1 = result == null ? -1 : result.depthPhase1;
+				event.nodes = nodes - nodesBefore;
+				event.result = result == null ? "exception" : result.ok() ? "ok" : result.status.error();
+				event.commit();
+			}
+		}
+	}
+
+	private SolveResult search(CubieCube cc, int maxDepth, long deadline) {
+		int s;
 		if ((s = cc.verify()) != 0)
-			return "Error " + Math.abs(s);
+			return SolveResult.failed(SolveResult.Status.of(-s));
 
 		CoordCube c = new CoordCube(cc);
 
@@ -135,8 +280,6 @@ public class Search {
 		boolean busy = false;
 		int depthPhase1 = 1;
 
-		long tStart = System.currentTimeMillis();
-
 		do {
 			do {
 				if ((depthPhase1 - n > minDistPhase1[n + 1]) && !busy) {
@@ -150,12 +293,19 @@ public class Search {
 					do {
 						if (++ax[n] > 5) {
 
-							if (System.currentTimeMillis() - tStart > timeOut << 10)
-								return "Error 8";
+							long now = System.currentTimeMillis();
+							if (now > deadline)
+								return SolveResult.failed(SolveResult.Status.TIMEOUT);
+							if (cancelled)
+								return SolveResult.failed(SolveResult.Status.CANCELLED);
+							if (listener != null && now >= nextProgress) {
+								nextProgress = now + progressIntervalMs;
+								listener.onProgress(depthPhase1, nodes);
+							}
 
 							if (n == 0) {
 								if (depthPhase1 >= maxDepth)
-									return "Error 7";
+									return SolveResult.failed(SolveResult.Status.NO_SOLUTION);
 								else {
 									depthPhase1++;
 									ax[n] = 0;
@@ -178,6 +328,9 @@ public class Search {
 					busy = false;
 			} while (busy);
 
+			nodes++;
+			if (stats != null)
+				stats.phase1NodesByDepth[depthPhase1]++;
 			mv = 3 * ax[n] + po[n] - 1;
 			flip[n + 1] = CoordCube.flipMove[flip[n]][mv];
 			twist[n + 1] = CoordCube.twistMove[twist[n]][mv];
@@ -192,15 +345,34 @@ public class Search {
 				minDistPhase1[n + 1] = 10;
 				if (n == depthPhase1 - 1 && (s = totalDepth(depthPhase1, maxDepth)) >= 0) {
 					if (s == depthPhase1
-							|| (ax[depthPhase1 - 1] != ax[depthPhase1] && ax[depthPhase1 - 1] != ax[depthPhase1] + 3))
-						return useSeparator ? solutionToString(s, depthPhase1) : solutionToString(s);
+							|| (ax[depthPhase1 - 1] != ax[depthPhase1] && ax[depthPhase1 - 1] != ax[depthPhase1] + 3)) {
+						if (stats != null) {
+							stats.depthPhase1 = depthPhase1;
+							stats.depthPhase2 = s - depthPhase1;
+						}
+						// The only allocation per solution: ax and po already hold the moves.
+						byte[] moves = new byte[s];
+						for (int i = 0; i < s; i++)
+							moves[i] = (byte) (3 * ax[i] + po[i] - 1);
+						return new SolveResult(SolveResult.Status.OK, moves, depthPhase1, stats);
+					}
 				}
 
 			}
 		} while (true);
 	}
 
-	static int totalDepth(int depthPhase1, int maxDepth) {
+	int totalDepth(int depthPhase1, int maxDepth) {
+		if (stats == null)
+			return phase2(depthPhase1, maxDepth);
+		stats.phase1Candidates++;
+		long t0 = System.nanoTime();
+		int s = phase2(depthPhase1, maxDepth);
+		stats.phase2Nanos += System.nanoTime() - t0;
+		return s;
+	}
+
+	private int phase2(int depthPhase1, int maxDepth) {
 		int mv = 0, d1 = 0, d2 = 0;
 		int maxDepthPhase2 = Math.min(10, maxDepth - depthPhase1);
 		for (int i = 0; i < depthPhase1; i++) {
@@ -212,8 +384,11 @@ public class Search {
 
 		if ((d1 = CoordCube.getPruning(CoordCube.Slice_URFtoDLF_Parity_Prun,
 				(CoordCube.N_SLICE2 * URFtoDLF[depthPhase1] + FRtoBR[depthPhase1]) * 2
-						+ parity[depthPhase1])) > maxDepthPhase2)
+						+ parity[depthPhase1])) > maxDepthPhase2) {
+			if (stats != null)
+				stats.rejectedByCornerPrune++;
 			return -1;
+		}
 
 		for (int i = 0; i < depthPhase1; i++) {
 			mv = 3 * ax[i] + po[i] - 1;
@@ -224,8 +399,11 @@ public class Search {
 
 		if ((d2 = CoordCube.getPruning(CoordCube.Slice_URtoDF_Parity_Prun,
 				(CoordCube.N_SLICE2 * URtoDF[depthPhase1] + FRtoBR[depthPhase1]) * 2
-						+ parity[depthPhase1])) > maxDepthPhase2)
+						+ parity[depthPhase1])) > maxDepthPhase2) {
+			if (stats != null)
+				stats.rejectedByEdgePrune++;
 			return -1;
+		}
 
 		if ((minDistPhase2[depthPhase1] = Math.max(d1, d2)) == 0)
 			return depthPhase1;
@@ -279,6 +457,9 @@ public class Search {
 					busy = false;
 			} while (busy);
 
+			nodes++;
+			if (stats != null)
+				stats.phase2Nodes++;
 			mv = 3 * ax[n] + po[n] - 1;
 
 			URFtoDLF[n + 1] = CoordCube.URFtoDLF_Move[URFtoDLF[n]][mv];
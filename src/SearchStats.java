@@ -0,0 +1,46 @@
+/**
+ * Counters for one {@link Search}, filled in only when attached with
+ * {@link Search#setStats}. They accumulate over every solve the search runs, so for
+ * {@link Search#solveImproving} they cover all the improving passes; the final depths
+ * are those of the last solution found.
+ */
+public class SearchStats {
+
+	/** Phase-1 nodes expanded, indexed by the phase-1 search depth they were expanded at. */
+	public final long[] phase1NodesByDepth = new long[31];
+	/** Phase-1 end states in G1 handed to phase 2. */
+	public long phase1Candidates;
+	public long phase2Nodes;
+	/** Candidates dropped by the corner (URFtoDLF + parity) phase-2 pruning bound. */
+	public long rejectedByCornerPrune;
+	/** Candidates dropped by the edge (URtoDF + parity) phase-2 pruning bound. */
+	public long rejectedByEdgePrune;
+	public int depthPhase1 = -1;
+	public int depthPhase2 = -1;
+	long totalNanos;
+	public long phase2Nanos;
+
+	public long phase1Nodes() {
+		long n = 0;
+		for (long d : phase1NodesByDepth)
+			n += d;
+		return n;
+	}
+
+	/** Time spent outside phase 2, i.e. in the phase-1 search and setup. */
+	public long phase1Nanos() {
+		return totalNanos - phase2Nanos;
+	}
+
+	public long totalNanos() {
+		return totalNanos;
+	}
+
+	/** The deepest phase-1 depth searched, or 0 if none. */
+	public int maxPhase1Depth() {
+		for (int d = phase1NodesByDepth.length - 1; d > 0; d--)
+			if (phase1NodesByDepth[d] != 0)
+				return d;
+		return 0;
+	}
+}
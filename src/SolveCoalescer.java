@@ -0,0 +1,165 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight front for {@link Search}: concurrent requests for the same cube
+ * attach to one running search and all receive its result. The shared search is
+ * cancelled only once every attached caller has left before it finished.
+ * Every search is queued on the {@link SolveScheduler} lane its class and estimated
+ * difficulty pick. With a {@link WorkerPool}, first-solution searches (unless stats are
+ * wanted) then run in a worker process: the scheduler thread only forwards the cube and
+ * waits for the reply, so classes, weights, lanes and queue bounds apply as they do to
+ * local searches, and cancelling the search cancels it on the worker too.
+ */
+public class SolveCoalescer {
+    private final SolveScheduler executor;
+    private final WorkerPool workers;
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+
+    public SolveCoalescer(SolveScheduler executor) {
+        this(executor, null);
+    }
+
+    public SolveCoalescer(SolveScheduler executor, WorkerPool workers) {
+        this.executor = executor;
+        this.workers = workers;
+    }
+
+    /**
+     * Attaches to the search for these facelets, starting one if none is running.
+     * Callers must {@link Ticket#leave()} the returned ticket when done with it.
+     */
+    public Ticket join(String facelets, SolveOptions options, SolveScheduler.TrafficClass trafficClass) {
+        return join(facelets, options, trafficClass, false);
+    }
+
+    /** As {@link #join(String, SolveOptions, SolveScheduler.TrafficClass)}; with stats the search runs locally and counts. */
+    public Ticket join(String facelets, SolveOptions options, SolveScheduler.TrafficClass trafficClass, boolean stats) {
+        // Classes do not share searches: an interactive caller must not wait in the bulk queue.
+        String key = facelets + '|' + options.key() + '|' + trafficClass + (stats ? "|stats" : "");
+        while (true) {
+            Flight created = new Flight(key);
+            if (stats) created.search.setStats(new SearchStats());
+            Flight existing = inFlight.putIfAbsent(key, created);
+            if (existing == null) {
+                created.attach();
+                started.increment();
+                JfrEvents.cacheLookup("solve-coalescer", false);
+                start(created, facelets, options, trafficClass);
+                return new Ticket(created);
+            }
+            if (existing.attach()) {
+                joined.increment();
+                JfrEvents.cacheLookup("solve-coalescer", true);
+                return new Ticket(existing);
+            }
+            // Every waiter left and the search is being cancelled; start a fresh one.
+            inFlight.remove(key, existing);
+        }
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+
+    /** Callers that started a new search. */
+    public long started() {
+        return started.sum();
+    }
+
+    /** Callers that attached to a search already running for the same cube. */
+    public long joined() {
+        return joined.sum();
+    }
+
+    private void start(Flight f, String facelets, SolveOptions options, SolveScheduler.TrafficClass trafficClass) {
+        f.result.whenComplete((r, e) -> inFlight.remove(f.key, f));
+        boolean remote = workers != null && options.mode == SolveOptions.Mode.FIRST && f.search.stats() == null;
+        try {
+            executor.execute(() -> {
+                try {
+                    f.result.complete(remote ? f.solveOn(workers, facelets, options) : options.run(f.search, facelets));
+                } catch (Throwable t) {
+                    f.result.completeExceptionally(t);
+                }
+            }, SolveScheduler.costOf(facelets), trafficClass);
+        } catch (RejectedExecutionException e) {
+            f.result.completeExceptionally(e);
+        }
+    }
+
+    private static final class Flight {
+        final String key;
+        final Search search = new Search();
+        final CompletableFuture<SolveResult> result = new CompletableFuture<>();
+        private int waiters;
+        private boolean abandoned;
+        private volatile Future<SolveResult> remote;
+
+        Flight(String key) {
+            this.key = key;
+        }
+
+        /** Runs the search on a worker, holding the calling scheduler thread until it answers. */
+        SolveResult solveOn(WorkerPool workers, String facelets, SolveOptions options) throws Exception {
+            if (search.isCancelled()) return SolveResult.failed(SolveResult.Status.CANCELLED);
+            // The binary protocol carries the timeout as a u16.
+            int timeoutMs = (int) Math.min(options.deadlineMs, 0xffff);
+            Future<SolveResult> r = workers.solve(facelets, options.maxLength, timeoutMs);
+            remote = r;
+            // The last caller may have left between the check above and publishing r.
+            if (search.isCancelled()) r.cancel(false);
+            try {
+                return r.get();
+            } catch (CancellationException e) {
+                return SolveResult.failed(SolveResult.Status.CANCELLED);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+
+        synchronized boolean attach() {
+            if (abandoned) return false;
+            waiters++;
+            return true;
+        }
+
+        synchronized void detach() {
+            if (--waiters == 0 && !result.isDone()) {
+                abandoned = true;
+                search.cancel();
+                Future<SolveResult> r = remote;
+                if (r != null) r.cancel(false);
+            }
+        }
+    }
+
+    /** One caller's handle on a shared search. */
+    public static final class Ticket {
+        private final Flight flight;
+        private boolean left;
+
+        private Ticket(Flight flight) {
+            this.flight = flight;
+        }
+
+        /** Blocks until the shared search completes and returns its result. */
+        public SolveResult await() throws InterruptedException, ExecutionException {
+            return flight.result.get();
+        }
+
+        public SolveResult await(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            return flight.result.get(timeout, unit);
+        }
+
+        /** Detaches this caller; the search is cancelled when the last caller leaves early. */
+        public synchronized void leave() {
+            if (left) return;
+            left = true;
+            flight.detach();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+
+/**
+ * Long-lived solver speaking line-delimited JSON over a pair of streams, normally
+ * stdin/stdout ({@code java Solver --serve [threads]}). Each input line is one request:
+ * a facelet string, a move sequence, or a JSON object such as
+ * {"id":"a1","cube":"R U R' U'","deadlineMs":2000}. JSON requests may also set "tier",
+ * "mode" and "maxLength" (see {@link SolveOptions}); "timeoutMs" is accepted as an alias
+ * for "deadlineMs". Requests are solved on a worker pool
+ * and each answer is written as soon as it is ready, so replies can come back out of
+ * order and carry the request's id (the 0-based line number when none is given). Every
+ * request gets exactly one reply, an "Internal error" one if the search itself fails:
+ *   {"id":"a1","solution":"U R U' R'","length":4}
+ *   {"id":7,"error":"Error 1"}
+ *
+ * The process builds the tables once and stays warm, so callers in other languages can
+ * keep one daemon per machine instead of starting a JVM per cube. "ready" is printed to
+ * stderr once warm-up is done; end of input drains outstanding requests and exits.
+ */
+public class SolveDaemon {
+    private static final long MAX_DEADLINE_MS = 60_000;
+
+    private final int threads;
+    private final int inFlight;
+    private final SolveOptions defaults;
+
+    public SolveDaemon(int threads, SolveOptions defaults) {
+        this.threads = threads;
+        this.inFlight = threads * 4;
+        this.defaults = defaults;
+    }
+
+    public void run(InputStream input, OutputStream output) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "solve-daemon");
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore slots = new Semaphore(inFlight);
+        OutputStream out = new BufferedOutputStream(output, 1 << 16);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            long index = 0;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                long lineIndex = index++;
+                String item = line;
+                slots.acquire();
+                pool.execute(() -> {
+                    try {
+                        handle(out, item, lineIndex);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            slots.acquire(inFlight);
+        } finally {
+            pool.shutdownNow();
+            out.flush();
+        }
+    }
+
+    private void handle(OutputStream out, String line, long lineIndex) {
+        String trimmed = line.trim();
+        boolean json = trimmed.startsWith("{");
+        String stringId = json ? JsonUtil.stringField(trimmed, "id") : null;
+        long numericId = json ? JsonUtil.longField(trimmed, "id", lineIndex) : lineIndex;
+        try {
+            String facelets = CubeInputUtil.parseRequestLine(trimmed);
+            SolveOptions options = json ? options(trimmed) : defaults;
+            SolveResult result = options.run(new Search(), facelets);
+            if (!result.ok()) {
+                writeLine(out, w -> id(w.beginObject(), stringId, numericId).field("error", result.status.error()).endObject());
+                return;
+            }
+            writeLine(out, w -> id(w.beginObject(), stringId, numericId)
+                .field("solution", result.text())
+                .field("length", result.length)
+                .endObject());
+        } catch (IllegalArgumentException e) {
+            writeLine(out, w -> id(w.beginObject(), stringId, numericId).field("error", e.getMessage()).endObject());
+        } catch (RuntimeException | Error e) {
+            // Every request gets exactly one reply, or an out-of-order caller waits for it forever.
+            System.err.println("Solve of request " + (stringId != null ? stringId : numericId) + " failed: " + e);
+            writeLine(out, w -> id(w.beginObject(), stringId, numericId).field("error", "Internal error").endObject());
+            if (e instanceof Error) throw (Error) e;
+        }
+    }
+
+    private SolveOptions options(String json) {
+        String tier = JsonUtil.stringField(json, "tier");
+        String mode = JsonUtil.stringField(json, "mode");
+        long maxLength = JsonUtil.longField(json, "maxLength", -1);
+        long deadlineMs = JsonUtil.longField(json, "deadlineMs", JsonUtil.longField(json, "timeoutMs", -1));
+        if (tier == null && mode == null && maxLength < 0 && deadlineMs < 0) return defaults;
+        // A tier in the request replaces the daemon defaults; otherwise fields override them.
+        SolveOptions base = tier != null ? SolveOptions.tier(tier) : defaults;
+        return SolveOptions.parse(base.tier,
+                String.valueOf(maxLength < 0 ? base.maxLength : maxLength),
+                String.valueOf(deadlineMs < 0 ? base.deadlineMs : deadlineMs),
+                mode != null ? mode : base.modeName(), MAX_DEADLINE_MS);
+    }
+
+    private static JsonWriter id(JsonWriter w, String stringId, long numericId) throws IOException {
+        return stringId != null ? w.field("id", stringId) : w.field("id", numericId);
+    }
+
+    private static void writeLine(OutputStream out, JsonWriter.Body body) {
+        JsonWriter w = JsonWriter.acquire();
+        try {
+            body.writeTo(w.reset(null));
+            synchronized (out) {
+                out.write(w.buffer(), 0, w.size());
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The caller closed our stdout; nothing left to report to.
+        } finally {
+            JsonWriter.release(w);
+        }
+    }
+
+    /** Builds the pruning tables and warms the search before the first request arrives. */
+    static void warmUp() {
+        SolveOptions.DEFAULT.run(new Search(), CubeInputUtil.parseToFacelets("R U R' U' F2 D L' B"));
+    }
+}
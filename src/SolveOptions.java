@@ -0,0 +1,89 @@
+import java.util.Locale;
+
+/**
+ * Per-request search parameters: the longest acceptable solution, the time budget and
+ * how hard to look for a shorter answer. A named tier supplies the defaults and explicit
+ * values override them; everything is clamped to the server's limits.
+ *
+ *   first       - return the first solution within maxLength (the historical behaviour)
+ *   best        - keep shortening until the deadline and return the shortest found
+ *   exhaustive  - best with the maximum deadline by default, for the best chance of
+ *                 exhausting the two-phase search. Only a result marked exhausted is known
+ *                 to have no shorter two-phase solution, and even that is not a proof of
+ *                 optimality. "optimal", its former name, is still accepted.
+ *
+ * Tiers: "default" (21 moves, 5120 ms, first), "interactive" (24 moves, 1000 ms, first:
+ * slightly longer solutions in a few ms) and "bulk" (21 moves, 10 s, best).
+ */
+public final class SolveOptions {
+    public enum Mode { FIRST, BEST, EXHAUSTIVE }
+
+    static final int MAX_LENGTH_LIMIT = 30;
+
+    public static final SolveOptions DEFAULT = new SolveOptions("default", 21, 5 << 10, Mode.FIRST);
+
+    public final String tier;
+    public final int maxLength;
+    public final long deadlineMs;
+    public final Mode mode;
+
+    public SolveOptions(String tier, int maxLength, long deadlineMs, Mode mode) {
+        this.tier = tier;
+        this.maxLength = maxLength;
+        this.deadlineMs = deadlineMs;
+        this.mode = mode;
+    }
+
+    public static SolveOptions tier(String name) {
+        switch (name) {
+            case "default": return DEFAULT;
+            case "interactive": return new SolveOptions("interactive", 24, 1000, Mode.FIRST);
+            case "bulk": return new SolveOptions("bulk", 21, 10_000, Mode.BEST);
+            default: throw new IllegalArgumentException("tier must be default, interactive or bulk");
+        }
+    }
+
+    /**
+     * Builds options from raw request values (any may be null) and clamps them to
+     * maxDeadlineMs. Throws IllegalArgumentException for values that do not parse.
+     */
+    public static SolveOptions parse(String tier, String maxLength, String deadlineMs, String mode, long maxDeadlineMs) {
+        SolveOptions base = tier(tier == null ? "default" : tier.toLowerCase(Locale.ROOT));
+        Mode m = base.mode;
+        if (mode != null) {
+            String name = mode.toUpperCase(Locale.ROOT);
+            try {
+                m = name.equals("OPTIMAL") ? Mode.EXHAUSTIVE : Mode.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("mode must be first, best or exhaustive");
+            }
+        }
+        int length = base.maxLength;
+        long deadline = m == Mode.EXHAUSTIVE && base.mode != Mode.EXHAUSTIVE ? maxDeadlineMs : base.deadlineMs;
+        try {
+            if (maxLength != null) length = Integer.parseInt(maxLength.trim());
+            if (deadlineMs != null) deadline = Long.parseLong(deadlineMs.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("maxLength and deadlineMs must be integers");
+        }
+        length = Math.max(1, Math.min(length, MAX_LENGTH_LIMIT));
+        deadline = Math.max(1, Math.min(deadline, maxDeadlineMs));
+        return new SolveOptions(base.tier, length, deadline, m);
+    }
+
+    /** Identifies searches that would give the same answer, for request coalescing. */
+    String key() {
+        return maxLength + "|" + deadlineMs + "|" + mode;
+    }
+
+    /** Runs the search these options describe, starting the clock now. */
+    SolveResult run(Search search, String facelets) {
+        long deadline = System.currentTimeMillis() + deadlineMs;
+        if (mode == Mode.FIRST) return search.solveBy(facelets, maxLength, deadline);
+        return search.solveImproving(facelets, maxLength, deadline, null);
+    }
+
+    public String modeName() {
+        return mode.name().toLowerCase(Locale.ROOT);
+    }
+}
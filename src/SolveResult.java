@@ -0,0 +1,199 @@
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * What a search returns: the solution as move codes (3 * axis + power - 1, axes in URFDLB
+ * order, as in {@link BinaryProtocol}), where phase 1 ends in it, and a status in place of
+ * the "Error N" strings. Text forms are rendered from the codes only when asked for.
+ */
+public final class SolveResult {
+
+	/** How a search ended. The codes are the N of the "Error N" strings and binary protocol statuses. */
+	public enum Status {
+		OK(0),
+		/** Not exactly nine facelets of each color. */
+		BAD_COLORS(1),
+		/** Not all 12 edges exist exactly once. */
+		BAD_EDGES(2),
+		/** One edge has to be flipped. */
+		FLIPPED_EDGE(3),
+		/** Not all 8 corners exist exactly once. */
+		BAD_CORNERS(4),
+		/** One corner has to be twisted. */
+		TWISTED_CORNER(5),
+		/** Two corners or two edges have to be exchanged. */
+		PARITY(6),
+		/** No solution within the maximum length. */
+		NO_SOLUTION(7),
+		/** The deadline passed before a solution was found. */
+		TIMEOUT(8),
+		/** {@link Search#cancel} stopped the search. */
+		CANCELLED(9);
+
+		public final int code;
+
+		Status(int code) {
+			this.code = code;
+		}
+
+		/** The status with this code, or null if there is none. */
+		public static Status of(int code) {
+			Status[] all = values();
+			return code >= 0 && code < all.length ? all[code] : null;
+		}
+
+		/** True when the cube itself cannot be solved, as opposed to the search running out. */
+		public boolean invalidCube() {
+			return code >= 1 && code <= 6;
+		}
+
+		/** "Error N", the text the server and command-line tools report. */
+		public String error() {
+			return "Error " + code;
+		}
+	}
+
+	static final String[] MOVE_NAMES = {
+		"U", "U2", "U'", "R", "R2", "R'", "F", "F2", "F'",
+		"D", "D2", "D'", "L", "L2", "L'", "B", "B2", "B'" };
+
+	private static final byte[] NO_MOVES = {};
+	private static final SolveResult[] FAILED = new SolveResult[Status.values().length];
+
+	static {
+		for (Status s : Status.values())
+			if (s != Status.OK)
+				FAILED[s.code] = new SolveResult(s, NO_MOVES, -1, null);
+	}
+
+	public final Status status;
+	/** Number of moves; -1 unless the status is OK. */
+	public final int length;
+	/** Moves that belong to phase 1; -1 when unknown (solves on worker processes) or failed. */
+	public final int depthPhase1;
+	/** Counters of the search, when it was collecting them; otherwise null. */
+	public final SearchStats stats;
+	/**
+	 * Set when a search for shorter solutions ran out of candidates rather than time: no
+	 * shorter solution exists within the two-phase search.
+	 */
+	public final boolean exhausted;
+	private final byte[] moves;
+	private List<String> moveList;
+
+	SolveResult(Status status, byte[] moves, int depthPhase1, SearchStats stats) {
+		this(status, moves, depthPhase1, stats, false);
+	}
+
+	SolveResult(Status status, byte[] moves, int depthPhase1, SearchStats stats, boolean exhausted) {
+		this.status = status;
+		this.moves = moves;
+		this.length = status == Status.OK ? moves.length : -1;
+		this.depthPhase1 = depthPhase1;
+		this.stats = stats;
+		this.exhausted = exhausted;
+	}
+
+	/** This result, marked as the end of an exhausted search. */
+	SolveResult asExhausted() {
+		return exhausted ? this : new SolveResult(status, moves, depthPhase1, stats, true);
+	}
+
+	/** A solution given as move codes, with phase 1 and 2 unknown. */
+	public static SolveResult of(byte[] moves) {
+		return new SolveResult(Status.OK, moves, -1, null);
+	}
+
+	/** A search that ended without a solution. */
+	public static SolveResult failed(Status status) {
+		if (status == Status.OK)
+			throw new IllegalArgumentException("OK is not a failure");
+		return FAILED[status.code];
+	}
+
+	public boolean ok() {
+		return status == Status.OK;
+	}
+
+	/** The move codes. Not copied, so callers must not modify the array. */
+	public byte[] moves() {
+		return moves;
+	}
+
+	/** The moves as names such as "R2", without allocating a string per move. */
+	public List<String> moveList() {
+		if (moveList == null)
+			moveList = new AbstractList<String>() {
+				@Override
+				public String get(int i) {
+					return MOVE_NAMES[moves[i]];
+				}
+
+				@Override
+				public int size() {
+					return moves.length;
+				}
+			};
+		return moveList;
+	}
+
+	/** The moves separated by spaces, e.g. "U R2 F'"; empty for a solved cube. */
+	public String text() {
+		return text(false);
+	}
+
+	/**
+	 * The moves separated by spaces, with " . " between phase 1 and phase 2 when asked for
+	 * and known. A failed result gives its "Error N" text.
+	 */
+	public String text(boolean separator) {
+		if (!ok())
+			return status.error();
+		boolean dot = separator && depthPhase1 >= 0;
+		// Filled once at its largest possible size, "X' " per move plus ". ".
+		char[] buf = new char[3 * moves.length + 2];
+		int n = 0;
+		for (int i = 0; i < moves.length; i++) {
+			if (n > 0)
+				buf[n++] = ' ';
+			if (dot && i == depthPhase1 && i > 0) {
+				buf[n++] = '.';
+				buf[n++] = ' ';
+			}
+			int m = moves[i];
+			buf[n++] = "URFDLB".charAt(m / 3);
+			if (m % 3 == 1)
+				buf[n++] = '2';
+			else if (m % 3 == 2)
+				buf[n++] = '\'';
+		}
+		if (dot && depthPhase1 == moves.length && n > 0) {
+			buf[n++] = ' ';
+			buf[n++] = '.';
+		}
+		return new String(buf, 0, n);
+	}
+
+	/**
+	 * The moves as quarter turns, each face letter repeated once per quarter turn ("R2"
+	 * becomes "RR", "R'" becomes "RRR"), as the command-line Solver writes them. A failed
+	 * result gives its "Error N" text.
+	 */
+	public String quarterTurns() {
+		if (!ok())
+			return status.error();
+		char[] buf = new char[3 * moves.length];
+		int n = 0;
+		for (byte m : moves) {
+			char face = "URFDLB".charAt(m / 3);
+			for (int k = 0; k <= m % 3; k++)
+				buf[n++] = face;
+		}
+		return new String(buf, 0, n);
+	}
+
+	@Override
+	public String toString() {
+		return text(true);
+	}
+}
@@ -0,0 +1,330 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed pool of solver threads fed from per-traffic-class queues, each split into two lanes.
+ *
+ * Classes: interactive (the web UI) and bulk (scripts, batches, binary clients). Each has
+ * its own bounded queue, so a batch run filling the bulk queue cannot get interactive
+ * requests rejected, and a weight: when both have work waiting, threads are handed out in
+ * proportion to the weights (stride scheduling). Running searches are never interrupted,
+ * and while interactive work waits bulk still gets its weight's share of the threads
+ * rather than stopping.
+ *
+ * Lanes: work whose {@link Search#estimate} phase-1 bound is at most {@code easyMaxBound}
+ * goes to the class's easy lane and is run shortest-bound first; everything else, and work
+ * whose cost is unknown, goes to its hard lane in FIFO order. Easy work is taken first. Hard
+ * work may hold at most all threads but one (one, on a single thread), so a burst of hard
+ * cubes cannot stall the easy lanes. A hard task that has waited {@code hardMaxWaitMs}
+ * jumps ahead, so a stream of easy cubes cannot starve the hard lane either.
+ */
+public class SolveScheduler implements Executor {
+    public static final int UNKNOWN_COST = Integer.MAX_VALUE;
+
+    public enum TrafficClass {
+        INTERACTIVE, BULK;
+
+        public static TrafficClass parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Traffic class must be interactive or bulk");
+            }
+        }
+
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // Stride scheduling: a class advances its pass by STRIDE / weight per task run.
+    private static final long STRIDE = 1 << 20;
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private final int threads;
+    private final int hardThreads;
+    private final int easyMaxBound;
+    private final long hardMaxWaitMs;
+    private final Queue[] queues;
+
+    private int hardRunning;
+    private long seq;
+    private long globalPass;
+    private volatile Metrics.Histogram stages;
+
+    /** Capacities and weights are indexed by {@link TrafficClass#ordinal()}. */
+    public SolveScheduler(int threads, int[] capacity, int[] weight, int easyMaxBound, long hardMaxWaitMs) {
+        this.threads = threads;
+        this.hardThreads = Math.max(1, threads - 1);
+        this.easyMaxBound = easyMaxBound;
+        this.hardMaxWaitMs = hardMaxWaitMs;
+        TrafficClass[] classes = TrafficClass.values();
+        this.queues = new Queue[classes.length];
+        for (TrafficClass c : classes)
+            queues[c.ordinal()] = new Queue(c, Math.max(1, capacity[c.ordinal()]), Math.max(1, weight[c.ordinal()]));
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(this::workLoop, "solve-" + (i + 1));
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    private static final class Task implements Comparable<Task> {
+        final Runnable runnable;
+        final int cost;
+        final long seq;
+        final Queue queue;
+        final long enqueuedNanos = System.nanoTime();
+        long startedNanos;
+
+        Task(Runnable runnable, int cost, long seq, Queue queue) {
+            this.runnable = runnable;
+            this.cost = cost;
+            this.seq = seq;
+            this.queue = queue;
+        }
+
+        @Override
+        public int compareTo(Task o) {
+            return cost != o.cost ? Integer.compare(cost, o.cost) : Long.compare(seq, o.seq);
+        }
+    }
+
+    /** One traffic class: its lanes, its share of the threads and its counters. */
+    private static final class Queue {
+        final TrafficClass trafficClass;
+        final int capacity;
+        final int weight;
+        final PriorityQueue<Task> easy = new PriorityQueue<>();
+        final ArrayDeque<Task> hard = new ArrayDeque<>();
+        long pass;
+        int running;
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong easyRun = new AtomicLong();
+        final AtomicLong hardRun = new AtomicLong();
+        // Recent queue waits and queue-to-finish latencies, in microseconds.
+        final long[] waitMicros = new long[LATENCY_SAMPLES];
+        final long[] totalMicros = new long[LATENCY_SAMPLES];
+        int samples;
+
+        Queue(TrafficClass trafficClass, int capacity, int weight) {
+            this.trafficClass = trafficClass;
+            this.capacity = capacity;
+            this.weight = weight;
+        }
+
+        int size() {
+            return easy.size() + hard.size();
+        }
+    }
+
+    /** A snapshot of one class's queue figures and recent latencies (microseconds). */
+    public static final class ClassStats {
+        public final TrafficClass trafficClass;
+        public final int weight, capacity, queued, easyQueued, hardQueued, running;
+        public final long submitted, rejected, easyRun, hardRun;
+        public final long waitP50Us, waitP99Us, latencyP50Us, latencyP99Us;
+
+        ClassStats(Queue q, long[] waits, long[] totals) {
+            trafficClass = q.trafficClass;
+            weight = q.weight;
+            capacity = q.capacity;
+            easyQueued = q.easy.size();
+            hardQueued = q.hard.size();
+            queued = easyQueued + hardQueued;
+            running = q.running;
+            submitted = q.submitted.get();
+            rejected = q.rejected.get();
+            easyRun = q.easyRun.get();
+            hardRun = q.hardRun.get();
+            waitP50Us = percentile(waits, 50);
+            waitP99Us = percentile(waits, 99);
+            latencyP50Us = percentile(totals, 50);
+            latencyP99Us = percentile(totals, 99);
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            if (sorted.length == 0) return 0;
+            int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+        }
+    }
+
+    /** Runs as bulk work in the hard lane: the caller and the cost are unknown. */
+    @Override
+    public void execute(Runnable task) {
+        execute(task, UNKNOWN_COST, TrafficClass.BULK);
+    }
+
+    /**
+     * Queues work for the given class with the given estimated cost (a phase-1 lower bound).
+     * Throws RejectedExecutionException when that class's queue is full.
+     */
+    public synchronized void execute(Runnable task, int cost, TrafficClass trafficClass) {
+        Queue q = queues[trafficClass.ordinal()];
+        if (q.size() >= q.capacity) {
+            q.rejected.incrementAndGet();
+            throw new RejectedExecutionException("Solve queue full");
+        }
+        // A class that was idle starts level with the others instead of spending saved-up credit.
+        if (q.size() == 0 && q.running == 0) q.pass = Math.max(q.pass, globalPass);
+        Task t = new Task(task, cost, seq++, q);
+        if (cost <= easyMaxBound) q.easy.add(t);
+        else q.hard.add(t);
+        q.submitted.incrementAndGet();
+        notifyAll();
+    }
+
+    /**
+     * As {@link #execute(Runnable, int, TrafficClass)}, but waits up to timeoutMs for room in
+     * the class's queue instead of rejecting. Returns false if there was still none by then.
+     */
+    public synchronized boolean offer(Runnable task, int cost, TrafficClass trafficClass, long timeoutMs)
+            throws InterruptedException {
+        Queue q = queues[trafficClass.ordinal()];
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        long left;
+        while (q.size() >= q.capacity) {
+            if ((left = end - System.nanoTime()) <= 0) return false;
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        execute(task, cost, trafficClass);
+        return true;
+    }
+
+    /** The lane cost for a cube: its phase-1 bound, or 0 for cubes that fail validation fast. */
+    public static int costOf(String facelets) {
+        try {
+            return Search.estimate(facelets).phase1;
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    public boolean isEasy(int cost) {
+        return cost <= easyMaxBound;
+    }
+
+    public synchronized int queued() {
+        int n = 0;
+        for (Queue q : queues) n += q.size();
+        return n;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    public synchronized ClassStats stats(TrafficClass trafficClass) {
+        Queue q = queues[trafficClass.ordinal()];
+        int n = Math.min(q.samples, LATENCY_SAMPLES);
+        long[] waits = Arrays.copyOf(q.waitMicros, n);
+        long[] totals = Arrays.copyOf(q.totalMicros, n);
+        Arrays.sort(waits);
+        Arrays.sort(totals);
+        return new ClassStats(q, waits, totals);
+    }
+
+    /** Publishes per-class queue depth, counters and queue/run time histograms. */
+    public void registerMetrics(Metrics metrics) {
+        for (Queue q : queues) {
+            String c = q.trafficClass.label();
+            metrics.gauge("rubik_solve_queue_depth", "Solves waiting for a solver thread",
+                    () -> queuedIn(q), "class", c);
+            metrics.gauge("rubik_solve_running", "Solves running on a solver thread",
+                    () -> runningIn(q), "class", c);
+            metrics.counterFunc("rubik_solve_rejected_total", "Solves refused because the class queue was full",
+                    q.rejected::get, "class", c);
+        }
+        stages = metrics.histogram("rubik_solve_stage_seconds",
+                "Time solves spent waiting in the queue and running", Metrics.LATENCY_BUCKETS, "class", "stage");
+    }
+
+    private synchronized int queuedIn(Queue q) {
+        return q.size();
+    }
+
+    private synchronized int runningIn(Queue q) {
+        return q.running;
+    }
+
+    private void workLoop() {
+        while (true) {
+            Task t;
+            boolean isHard;
+            synchronized (this) {
+                while ((t = pick()) == null) {
+                    try {
+                        wait(hardWaiting() ? hardMaxWaitMs : 0);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                isHard = t.cost > easyMaxBound;
+                if (isHard) hardRunning++;
+                t.queue.running++;
+                t.queue.pass += STRIDE / t.queue.weight;
+                globalPass = Math.max(globalPass, t.queue.pass - STRIDE / t.queue.weight);
+                // A queue slot just came free for anyone waiting in offer().
+                notifyAll();
+            }
+            t.startedNanos = System.nanoTime();
+            try {
+                t.runnable.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            } finally {
+                Metrics.Histogram h = stages;
+                if (h != null) {
+                    String c = t.queue.trafficClass.label();
+                    h.labels(c, "queue").observeNanos(t.startedNanos - t.enqueuedNanos);
+                    h.labels(c, "run").observeNanos(System.nanoTime() - t.startedNanos);
+                }
+                finished(t, isHard);
+            }
+        }
+    }
+
+    private synchronized void finished(Task t, boolean isHard) {
+        Queue q = t.queue;
+        long end = System.nanoTime();
+        int i = q.samples++ % LATENCY_SAMPLES;
+        q.waitMicros[i] = (t.startedNanos - t.enqueuedNanos) / 1000;
+        q.totalMicros[i] = (end - t.enqueuedNanos) / 1000;
+        (isHard ? q.hardRun : q.easyRun).incrementAndGet();
+        q.running--;
+        if (isHard) hardRunning--;
+        notifyAll();
+    }
+
+    private boolean hardWaiting() {
+        for (Queue q : queues) if (!q.hard.isEmpty()) return true;
+        return false;
+    }
+
+    // Classes are tried lowest pass first; the first one with runnable work wins.
+    private Task pick() {
+        Queue[] order = queues.clone();
+        Arrays.sort(order, (a, b) -> Long.compare(a.pass, b.pass));
+        for (Queue q : order) {
+            Task t = pickFrom(q);
+            if (t != null) return t;
+        }
+        return null;
+    }
+
+    private Task pickFrom(Queue q) {
+        Task h = q.hard.peek();
+        if (h != null && hardRunning < hardThreads
+                && (q.easy.isEmpty() || System.nanoTime() - h.enqueuedNanos >= hardMaxWaitMs * 1_000_000))
+            return q.hard.poll();
+        return q.easy.poll();
+    }
+}
@@ -1,11 +1,22 @@
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Solver {
 
@@ -15,17 +26,38 @@ public class Solver {
     private static final char[] FACE_LETTERS = { 'U', 'R', 'F', 'D', 'L', 'B' };
     private static final int[][] FACE_COORDS = { { 0, 3 }, { 3, 6 }, { 3, 3 }, { 6, 3 }, { 3, 0 }, { 3, 9 } };
 
+    private static final long MAX_DEADLINE_MS = 600_000;
+    private static final long MAP_REGION = 1L << 28;
+
+    private static SolveOptions options = SolveOptions.DEFAULT;
+
     public static void main(String[] args) {
+        try {
+            args = parseOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        if (args.length >= 3 && args[0].equals("--batch")) {
+            batch(args);
+            return;
+        }
+        if (args.length >= 1 && args[0].equals("--serve")) {
+            serve(args);
+            return;
+        }
         if (args.length != 2) {
             System.err.println("Usage: java Solver <scramble-net> <solution-output>");
+            System.err.println("       java Solver --batch <dir-or-file> <results-output> [threads]");
+            System.err.println("       java Solver --serve [threads]   (requests on stdin, results on stdout)");
+            System.err.println("Options: --tier=default|interactive|bulk --mode=first|best|exhaustive --maxLength=N --deadlineMs=N");
             System.exit(1);
         }
         Path scrambleNet = Path.of(args[0]);
         Path output = Path.of(args[1]);
         try {
             String facelets = readFacelets(scrambleNet);
-            String rawSolution = Search.solution(facelets, 21, 5, false);
-            String normalized = normalize(rawSolution);
+            String normalized = options.run(new Search(), facelets).quarterTurns();
             Files.writeString(output, normalized + System.lineSeparator());
             System.out.println("Solution written to " + output + " -> " + normalized);
         } catch (IOException e) {
@@ -37,8 +69,225 @@ public class Solver {
         }
     }
 
+    // Pulls --name=value search options out of the arguments and returns the rest.
+    private static String[] parseOptions(String[] args) {
+        Map<String, String> flags = new LinkedHashMap<>();
+        List<String> rest = new ArrayList<>();
+        for (String a : args) {
+            int eq = a.indexOf('=');
+            if (a.startsWith("--") && eq > 2)
+                flags.put(a.substring(2, eq), a.substring(eq + 1));
+            else
+                rest.add(a);
+        }
+        for (String name : flags.keySet())
+            if (!List.of("tier", "mode", "maxLength", "deadlineMs").contains(name))
+                throw new IllegalArgumentException("Unknown option --" + name);
+        if (!flags.isEmpty())
+            options = SolveOptions.parse(flags.get("tier"), flags.get("maxLength"), flags.get("deadlineMs"),
+                    flags.get("mode"), MAX_DEADLINE_MS);
+        return rest.toArray(new String[0]);
+    }
+
+    /**
+     * Batch mode: solves every net file in a directory, or every record of one large file,
+     * on all cores in a single JVM so the tables are built once. A file may mix 54-letter
+     * facelet strings (one per line) and 9-row nets; it is read memory-mapped. Results are
+     * written one per line in input order as "label<TAB>solution".
+     */
+    private static void batch(String[] args) {
+        Path input = Path.of(args[1]);
+        Path output = Path.of(args[2]);
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<Result>> window = new ArrayDeque<>();
+        BatchStats stats = new BatchStats();
+        long t0 = System.nanoTime();
+        try (BufferedWriter out = Files.newBufferedWriter(output)) {
+            RecordSink sink = (label, facelets, error) -> {
+                window.add(pool.submit(() -> solveRecord(label, facelets, error)));
+                if (window.size() >= threads * 4)
+                    writeResult(out, window.poll(), stats);
+            };
+            if (Files.isDirectory(input))
+                readDirectory(input, sink);
+            else
+                readMapped(input, sink);
+            while (!window.isEmpty())
+                writeResult(out, window.poll(), stats);
+        } catch (IOException e) {
+            System.err.println("I/O error: " + e.getMessage());
+            System.exit(2);
+        } finally {
+            pool.shutdownNow();
+        }
+        stats.print(System.nanoTime() - t0, threads);
+        System.out.println("Results written to " + output);
+    }
+
+    private static void serve(String[] args) {
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        SolveDaemon.warmUp();
+        System.err.println("ready");
+        try {
+            new SolveDaemon(threads, options).run(System.in, System.out);
+        } catch (IOException e) {
+            System.err.println("I/O error: " + e.getMessage());
+            System.exit(2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface RecordSink {
+        void accept(String label, String facelets, String error) throws IOException;
+    }
+
+    private static final class Result {
+        final String label;
+        final String solution;
+        final long nanos;
+        final int length;
+
+        Result(String label, String solution, long nanos, int length) {
+            this.label = label;
+            this.solution = solution;
+            this.nanos = nanos;
+            this.length = length;
+        }
+    }
+
+    private static Result solveRecord(String label, String facelets, String error) {
+        if (error != null)
+            return new Result(label, "Invalid: " + error, 0, -1);
+        long start = System.nanoTime();
+        SolveResult result = options.run(new Search(), facelets);
+        return new Result(label, result.quarterTurns(), System.nanoTime() - start, result.length);
+    }
+
+    private static void writeResult(BufferedWriter out, Future<Result> future, BatchStats stats) throws IOException {
+        Result r;
+        try {
+            r = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Solve failed", e.getCause());
+        }
+        out.write(r.label);
+        out.write('\t');
+        out.write(r.solution);
+        out.newLine();
+        stats.add(r);
+    }
+
+    private static void readDirectory(Path dir, RecordSink sink) throws IOException {
+        List<Path> files;
+        try (Stream<Path> s = Files.list(dir)) {
+            files = s.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String facelets = null, error = null;
+            try {
+                facelets = readFacelets(file);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                error = e.getMessage();
+            }
+            sink.accept(file.getFileName().toString(), facelets, error);
+        }
+    }
+
+    // Lines are decoded straight from the mapping one byte at a time (inputs are ASCII),
+    // region by region so files larger than 2 GB work too.
+    private static void readMapped(Path file, RecordSink sink) throws IOException {
+        List<String> net = new ArrayList<>(ROWS);
+        StringBuilder line = new StringBuilder(64);
+        int[] record = { 0 };
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            for (long pos = 0; pos < size; pos += MAP_REGION) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_REGION, size - pos));
+                while (buf.hasRemaining()) {
+                    byte b = buf.get();
+                    if (b == '\n') {
+                        acceptLine(line.toString(), net, record, sink);
+                        line.setLength(0);
+                    } else if (b != '\r') {
+                        line.append((char) (b & 0xff));
+                    }
+                }
+            }
+        }
+        acceptLine(line.toString(), net, record, sink);
+        if (!net.isEmpty())
+            sink.accept("#" + record[0]++, null, "Expected 9 non-empty rows, found " + net.size());
+    }
+
+    private static void acceptLine(String line, List<String> net, int[] record, RecordSink sink) throws IOException {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty()) {
+            if (!net.isEmpty()) {
+                sink.accept("#" + record[0]++, null, "Expected 9 non-empty rows, found " + net.size());
+                net.clear();
+            }
+            return;
+        }
+        if (net.isEmpty() && trimmed.length() == FACELET_COUNT) {
+            String facelets = null, error = null;
+            try {
+                facelets = CubeInputUtil.parseToFacelets(trimmed);
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+            sink.accept("#" + record[0]++, facelets, error);
+            return;
+        }
+        net.add(line);
+        if (net.size() == ROWS) {
+            String facelets = null, error = null;
+            try {
+                facelets = readFacelets(net);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                error = e.getMessage();
+            }
+            sink.accept("#" + record[0]++, facelets, error);
+            net.clear();
+        }
+    }
+
+    private static final class BatchStats {
+        final LatencyStats latency = new LatencyStats();
+        final int[] lengths = new int[SolveOptions.MAX_LENGTH_LIMIT + 1];
+        int failed;
+
+        void add(Result r) {
+            if (r.length < 0) {
+                failed++;
+                return;
+            }
+            latency.record(r.nanos);
+            lengths[Math.min(r.length, lengths.length - 1)]++;
+        }
+
+        void print(long wallNanos, int threads) {
+            int total = latency.count() + failed;
+            double secs = wallNanos / 1e9;
+            System.out.printf("%d cubes (%d failed) in %.2f s on %d threads: %.1f cubes/s%n",
+                    total, failed, secs, threads, total / secs);
+            System.out.println("Latency: " + latency.summary());
+            System.out.println("Solution lengths:");
+            for (int len = 0; len < lengths.length; len++)
+                if (lengths[len] > 0)
+                    System.out.printf("  %2d moves: %d%n", len, lengths[len]);
+        }
+    }
+
     private static String readFacelets(Path path) throws IOException {
-        List<String> rawLines = Files.readAllLines(path);
+        return readFacelets(Files.readAllLines(path));
+    }
+
+    private static String readFacelets(List<String> rawLines) {
         List<String> contentLines = new ArrayList<>(ROWS);
         for (String line : rawLines) {
             if (line == null)
@@ -97,30 +346,4 @@ public class Solver {
             throw new IllegalStateException("Expected " + FACE_LETTERS.length + " distinct center colors");
         return colorMap;
     }
-
-    private static String normalize(String rawSolution) {
-        String trimmed = rawSolution.trim();
-        if (trimmed.isEmpty())
-            return "";
-        if (trimmed.startsWith("Error"))
-            return trimmed;
-        StringBuilder compact = new StringBuilder();
-        for (String token : trimmed.split("\\s+")) {
-            if (token.isEmpty())
-                continue;
-            char face = token.charAt(0);
-            if (!Character.isLetter(face))
-                continue;
-            if (token.length() == 1) {
-                compact.append(face);
-            } else if (token.charAt(1) == '2') {
-                compact.append(face).append(face);
-            } else if (token.charAt(1) == '\'') {
-                compact.append(face).append(face).append(face);
-            } else {
-                compact.append(face);
-            }
-        }
-        return compact.toString();
-    }
 }
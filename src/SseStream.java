@@ -0,0 +1,47 @@
+import com.sun.net.httpserver.HttpExchange;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Server-Sent Events response. Each event's JSON data is rendered into a pooled
+ * {@link JsonWriter} and flushed immediately so clients see it without buffering.
+ * A failed write means the client has gone away.
+ */
+public class SseStream implements Closeable {
+    private final OutputStream out;
+    private final JsonWriter w = JsonWriter.acquire();
+    private boolean closed;
+
+    private SseStream(OutputStream out) {
+        this.out = out;
+    }
+
+    public static SseStream open(HttpExchange ex) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        ex.getResponseHeaders().set("Cache-Control", "no-cache");
+        ex.getResponseHeaders().set("X-Accel-Buffering", "no");
+        ex.sendResponseHeaders(200, 0);
+        return new SseStream(ex.getResponseBody());
+    }
+
+    public synchronized void send(String event, JsonWriter.Body data) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        w.reset(null);
+        data.writeTo(w);
+        out.write(("event: " + event + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+        out.write(w.buffer(), 0, w.size());
+        out.write('\n');
+        out.write('\n');
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        JsonWriter.release(w);
+        try {
+            out.close();
+        } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,185 @@
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-memory copy of the public/ directory. Every file is read and gzip-compressed
+ * once at startup (and again on change when watching), then served straight from
+ * its byte arrays with ETag / If-None-Match revalidation.
+ */
+public class StaticAssets {
+    private final Path root;
+    private final int maxAgeSeconds;
+    private volatile Map<String, Asset> assets = Collections.emptyMap();
+
+    private static final class Asset {
+        final String contentType;
+        final byte[] identity;
+        final byte[] gzip;
+        final String etag;
+        final String gzipEtag;
+
+        Asset(String contentType, byte[] identity, byte[] gzip, String etag) {
+            this.contentType = contentType;
+            this.identity = identity;
+            this.gzip = gzip;
+            this.etag = "\"" + etag + "\"";
+            this.gzipEtag = "\"" + etag + "-gz\"";
+        }
+    }
+
+    public StaticAssets(Path root, int maxAgeSeconds) throws IOException {
+        this.root = root;
+        this.maxAgeSeconds = maxAgeSeconds;
+        reload();
+    }
+
+    public int size() {
+        return assets.size();
+    }
+
+    public synchronized void reload() throws IOException {
+        Map<String, Asset> next = new HashMap<>();
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    String key = "/" + root.relativize(file).toString().replace(File.separatorChar, '/');
+                    next.put(key, load(file));
+                }
+            }
+        }
+        assets = next;
+    }
+
+    /** Reloads the whole directory on any change below it. Meant for local development. */
+    public void watch() throws IOException {
+        WatchService ws = root.getFileSystem().newWatchService();
+        try (Stream<Path> dirs = Files.walk(root)) {
+            for (Path dir : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+        Thread t = new Thread(() -> {
+            while (true) {
+                try {
+                    WatchKey key = ws.take();
+                    key.pollEvents();
+                    key.reset();
+                    reload();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    System.err.println("Static reload failed: " + e.getMessage());
+                }
+            }
+        }, "static-watch");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void handle(HttpExchange ex) throws IOException {
+        String method = ex.getRequestMethod();
+        boolean head = "HEAD".equalsIgnoreCase(method);
+        if (!head && !"GET".equalsIgnoreCase(method)) {
+            ex.getResponseHeaders().set("Allow", "GET, HEAD");
+            sendPlain(ex, 405, "Method Not Allowed");
+            return;
+        }
+
+        String path = ex.getRequestURI().getPath();
+        if (path == null || path.isEmpty() || "/".equals(path)) path = "/index.html";
+        Asset asset = assets.get(path);
+        if (asset == null) {
+            sendPlain(ex, 404, "Not Found");
+            return;
+        }
+
+        boolean gzip = asset.gzip != null && acceptsGzip(ex);
+        String etag = gzip ? asset.gzipEtag : asset.etag;
+        Headers h = ex.getResponseHeaders();
+        h.set("ETag", etag);
+        h.set("Cache-Control", path.endsWith(".html") ? "no-cache" : "public, max-age=" + maxAgeSeconds);
+        if (asset.gzip != null) h.set("Vary", "Accept-Encoding");
+
+        boolean revalidated = etagMatches(ex.getRequestHeaders().getFirst("If-None-Match"), asset);
+        JfrEvents.cacheLookup("static-etag", revalidated);
+        if (revalidated) {
+            ex.sendResponseHeaders(304, -1);
+            ex.close();
+            return;
+        }
+
+        byte[] body = gzip ? asset.gzip : asset.identity;
+        h.set("Content-Type", asset.contentType);
+        if (gzip) h.set("Content-Encoding", "gzip");
+        if (head) {
+            h.set("Content-Length", String.valueOf(body.length));
+            ex.sendResponseHeaders(200, -1);
+            ex.close();
+            return;
+        }
+        ex.sendResponseHeaders(200, body.length);
+        try (OutputStream os = ex.getResponseBody()) { os.write(body); }
+    }
+
+    static boolean acceptsGzip(HttpExchange ex) {
+        String ae = ex.getRequestHeaders().getFirst("Accept-Encoding");
+        return ae != null && ae.toLowerCase(Locale.ROOT).contains("gzip");
+    }
+
+    private static boolean etagMatches(String ifNoneMatch, Asset asset) {
+        if (ifNoneMatch == null) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.startsWith("W/")) t = t.substring(2);
+            if (t.equals("*") || t.equals(asset.etag) || t.equals(asset.gzipEtag)) return true;
+        }
+        return false;
+    }
+
+    private static Asset load(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        String ct = contentType(file.getFileName().toString());
+        byte[] gz = null;
+        if (ct.startsWith("text/") || ct.startsWith("application/javascript")) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 3 + 64);
+            try (GZIPOutputStream gzos = new GZIPOutputStream(bos)) { gzos.write(data); }
+            if (bos.size() < data.length) gz = bos.toByteArray();
+        }
+        return new Asset(ct, data, gz, hash(data));
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder sb = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) sb.append(String.format("%02x", d[i]));
+            return sb.toString();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String contentType(String name) {
+        String n = name.toLowerCase(Locale.ROOT);
+        if (n.endsWith(".html")) return "text/html; charset=utf-8";
+        if (n.endsWith(".css")) return "text/css; charset=utf-8";
+        if (n.endsWith(".js")) return "application/javascript; charset=utf-8";
+        if (n.endsWith(".txt")) return "text/plain; charset=utf-8";
+        return "application/octet-stream";
+    }
+
+    private static void sendPlain(HttpExchange ex, int status, String text) throws IOException {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        ex.sendResponseHeaders(status, data.length);
+        try (OutputStream os = ex.getResponseBody()) { os.write(data); }
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Optional on-disk copy of the CoordCube move and pruning tables. When a path is set
+ * (system property rubik.tables, else the TABLE_CACHE environment variable) the tables are
+ * read from the memory-mapped file instead of being rebuilt, and written there after the
+ * first build. Every process on a host that points at the same file skips the multi-second
+ * build. The file saves the build, not memory: {@link #load} copies it into each process's
+ * own heap arrays (about 4.4 MB), so N processes still hold N copies of the tables.
+ */
+class TableCache {
+
+	private static final int MAGIC = 0x52435431; // "RCT1"
+
+	private static volatile long initNanos = -1;
+	private static volatile boolean loaded;
+
+	static String path() {
+		String p = System.getProperty("rubik.tables");
+		return p != null && !p.isEmpty() ? p : System.getenv("TABLE_CACHE");
+	}
+
+	/** The configured path, or a file in the temp directory that cooperating processes agree on. */
+	static String sharedPath() {
+		String p = path();
+		return p != null ? p : Path.of(System.getProperty("java.io.tmpdir"), "rubik-tables.bin").toString();
+	}
+
+	/** Forces the tables to be built or loaded now rather than on the first solve. */
+	static void prepare() {
+		CoordCube.init();
+	}
+
+	/** Called once the tables are ready; loaded tells whether they came from the file. */
+	static void initialised(boolean fromFile, long nanos) {
+		loaded = fromFile;
+		initNanos = nanos;
+	}
+
+	/** Time the tables took to build or load, or -1 if they are not initialised yet. */
+	static long initNanos() {
+		return initNanos;
+	}
+
+	static boolean loadedFromFile() {
+		return loaded;
+	}
+
+	/** Bytes held by the move and pruning tables (the cache file minus its header). */
+	static long tableBytes() {
+		return size() - 4;
+	}
+
+	// Names of the tables below, in the same order, for JFR events.
+	static final String[] MOVE_TABLE_NAMES = { "twistMove", "flipMove", "FRtoBR_Move", "URFtoDLF_Move",
+			"URtoDF_Move", "URtoUL_Move", "UBtoDF_Move", "MergeURtoULandUBtoDF" };
+	static final String[] PRUNING_TABLE_NAMES = { "Slice_URFtoDLF_Parity_Prun", "Slice_URtoDF_Parity_Prun",
+			"Slice_Twist_Prun", "Slice_Flip_Prun" };
+
+	private static short[][][] moveTables() {
+		return new short[][][] { CoordCube.twistMove, CoordCube.flipMove, CoordCube.FRtoBR_Move,
+				CoordCube.URFtoDLF_Move, CoordCube.URtoDF_Move, CoordCube.URtoUL_Move, CoordCube.UBtoDF_Move,
+				CoordCube.MergeURtoULandUBtoDF };
+	}
+
+	private static byte[][] pruningTables() {
+		return new byte[][] { CoordCube.Slice_URFtoDLF_Parity_Prun, CoordCube.Slice_URtoDF_Parity_Prun,
+				CoordCube.Slice_Twist_Prun, CoordCube.Slice_Flip_Prun };
+	}
+
+	private static long size() {
+		long n = 4;
+		for (short[][] t : moveTables())
+			n += 2L * t.length * t[0].length;
+		for (byte[] t : pruningTables())
+			n += t.length;
+		return n;
+	}
+
+	static void tableEvent(JfrEvents.TableInit e, String table, String source, long bytes) {
+		if (!e.shouldCommit())
+			return;
+		e.table = table;
+		e.source = source;
+		e.bytes = bytes;
+		e.commit();
+	}
+
+	/** Fills the tables from the cache file; false if there is none or it does not match. */
+	static boolean load() {
+		String p = path();
+		boolean found = p != null && Files.isRegularFile(Path.of(p));
+		JfrEvents.cacheLookup("tables", found);
+		if (!found)
+			return false;
+		try (FileChannel ch = FileChannel.open(Path.of(p), StandardOpenOption.READ)) {
+			if (ch.size() != size())
+				return false;
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			if (buf.getInt() != MAGIC)
+				return false;
+			// Copied into the existing heap arrays so the search loops keep indexing plain arrays.
+			short[][][] moves = moveTables();
+			for (int i = 0; i < moves.length; i++) {
+				short[][] t = moves[i];
+				JfrEvents.TableInit e = new JfrEvents.TableInit();
+				e.begin();
+				ShortBuffer sb = buf.asShortBuffer();
+				for (short[] row : t)
+					sb.get(row);
+				buf.position(buf.position() + 2 * t.length * t[0].length);
+				tableEvent(e, MOVE_TABLE_NAMES[i], "file", 2L * t.length * t[0].length);
+			}
+			byte[][] pruning = pruningTables();
+			for (int i = 0; i < pruning.length; i++) {
+				JfrEvents.TableInit e = new JfrEvents.TableInit();
+				e.begin();
+				buf.get(pruning[i]);
+				tableEvent(e, PRUNING_TABLE_NAMES[i], "file", pruning[i].length);
+			}
+			return true;
+		} catch (IOException e) {
+			System.err.println("Table cache " + p + " unreadable, rebuilding: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/** Writes the built tables to the cache file, atomically so concurrent readers never see a partial file. */
+	static void save() {
+		String p = path();
+		if (p == null)
+			return;
+		Path target = Path.of(p);
+		Path tmp = null;
+		try {
+			tmp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+			try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				ByteBuffer buf = ByteBuffer.allocate((int) size());
+				buf.putInt(MAGIC);
+				for (short[][] t : moveTables())
+					for (short[] row : t)
+						for (short v : row)
+							buf.putShort(v);
+				for (byte[] t : pruningTables())
+					buf.put(t);
+				buf.flip();
+				while (buf.hasRemaining())
+					ch.write(buf);
+			}
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Could not write table cache " + p + ": " + e.getMessage());
+			try {
+				if (tmp != null)
+					Files.deleteIfExists(tmp);
+			} catch (IOException ignored) {
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Background start-up warm-up. Builds (or loads) the solver tables, then solves a set of
+ * representative cubes a few times so the search loops are JIT-compiled before real
+ * traffic arrives. Cubes come from the testcases/ nets, falling back to a few built-in
+ * scrambles. With a {@link WorkerPool} the solves go to the workers instead, and this
+ * process never builds its own tables.
+ */
+public class Warmup {
+    // The legacy solution(..., 5, ...) timeout, which counts 1024 ms to the second.
+    private static final int SOLVE_TIMEOUT_MS = 5 << 10;
+    private static final String[] FALLBACK = {
+        "R U R' U' R' F R2 U' R' U' R U R' F'",
+        "F2 D' L2 B U2 R' D F' L B2 U R2 D2 F L'",
+        "U' B2 L D R2 F' U2 L' B D2 R F2 U L2 D'",
+        "D R' F2 U B' L2 D2 R U' F B2 L' U2 R2 B",
+    };
+
+    private final Path testcases;
+    private final WorkerPool workers;
+    private final int rounds;
+    private final long startedAt = System.currentTimeMillis();
+    private volatile String stage = "pending";
+    private volatile long readyAfterMs = -1;
+
+    public Warmup(Path testcases, WorkerPool workers, int rounds) {
+        this.testcases = testcases;
+        this.workers = workers;
+        this.rounds = rounds;
+    }
+
+    public void start() {
+        Thread t = new Thread(this::run, "warmup");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    public boolean isReady() {
+        return readyAfterMs >= 0;
+    }
+
+    /** "workers" (waiting for them to start), "tables", "solving" or "ready". */
+    public String stage() {
+        return stage;
+    }
+
+    /** Milliseconds from start to ready, or -1 while warming up. */
+    public long readyAfterMs() {
+        return readyAfterMs;
+    }
+
+    private void run() {
+        try {
+            if (workers != null) {
+                stage = "workers";
+                workers.started().join();
+            }
+            stage = "tables";
+            if (workers == null) TableCache.prepare();
+            stage = "solving";
+            List<String> cubes = cubes();
+            for (int round = 0; round < rounds; round++) {
+                if (workers != null) {
+                    // Submitted together so the least-loaded dispatch spreads them over every worker.
+                    List<CompletableFuture<SolveResult>> all = new ArrayList<>();
+                    for (String f : cubes) all.add(workers.solve(f, 21, SOLVE_TIMEOUT_MS));
+                    for (CompletableFuture<SolveResult> f : all) f.exceptionally(e -> null).join();
+                } else {
+                    Search search = new Search();
+                    for (String f : cubes) search.solveBy(f, 21, System.currentTimeMillis() + SOLVE_TIMEOUT_MS);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Warm-up failed, serving anyway: " + e);
+        }
+        stage = "ready";
+        readyAfterMs = System.currentTimeMillis() - startedAt;
+        System.out.println("Warm-up done in " + readyAfterMs + " ms");
+    }
+
+    private List<String> cubes() {
+        List<String> cubes = new ArrayList<>();
+        if (Files.isDirectory(testcases)) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(testcases, "*.txt")) {
+                for (Path p : ds) {
+                    try {
+                        cubes.add(CubeInputUtil.parseToFacelets(Files.readString(p)));
+                    } catch (IllegalArgumentException | IOException ignored) {
+                        // Not a usable cube; skip it.
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        }
+        if (cubes.isEmpty())
+            for (String s : FALLBACK) cubes.add(CubeInputUtil.parseToFacelets(s));
+        return cubes;
+    }
+}
@@ -0,0 +1,257 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Child solver JVMs ({@code BinarySolveServer} in worker mode) that the web server hands
+ * solves to over loopback {@link BinaryProtocol} connections. Each solve goes to the
+ * worker with the fewest requests outstanding. A worker that exits is restarted in the
+ * background; requests it was holding are retried once on another worker.
+ *
+ * All workers load the tables from one {@link TableCache} file, so the parent never builds
+ * them for /api/solve and each extra worker skips the table build. Memory is not shared:
+ * each worker copies the tables into its own heap (about 4.4 MB), and an idle worker is
+ * around 55 MB resident, most of it the JVM itself.
+ */
+public class WorkerPool implements Closeable {
+    private static final long START_TIMEOUT_MS = 60_000;
+    // Beyond the solve's own timeout: the reply is late only if the worker is hung or stalled.
+    private static final long REPLY_MARGIN_MS = 2000;
+
+    private final Slot[] slots;
+    private final int threadsPerWorker;
+    private final String tables;
+    private final ExecutorService restarts;
+    private final CompletableFuture<Void> started = new CompletableFuture<>();
+    private volatile boolean closed;
+
+    public WorkerPool(int workers, int threadsPerWorker, String tables) {
+        this.slots = new Slot[workers];
+        this.threadsPerWorker = threadsPerWorker;
+        this.tables = tables;
+        this.restarts = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "worker-restart");
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < workers; i++) slots[i] = new Slot(i);
+    }
+
+    /**
+     * Starts every worker in the background, one after another: the first builds the table
+     * file the rest load. A worker that fails to start is retried until it comes up.
+     */
+    public void start() {
+        restarts.execute(() -> {
+            for (Slot s : slots) s.launchUntilUp();
+            started.complete(null);
+        });
+    }
+
+    /** Completes once every worker has come up for the first time. */
+    public CompletableFuture<Void> started() {
+        return started;
+    }
+
+    public int size() {
+        return slots.length;
+    }
+
+    /** Workers currently connected and taking requests. */
+    public int live() {
+        int n = 0;
+        for (Slot s : slots) {
+            BinarySolveClient c = s.client;
+            if (c != null && !c.isClosed()) n++;
+        }
+        return n;
+    }
+
+    /** Requests sent to workers beyond what their solver threads can run at once. */
+    public int queued() {
+        int outstanding = 0;
+        for (Slot s : slots) outstanding += s.outstanding.get();
+        return Math.max(0, outstanding - slots.length * threadsPerWorker);
+    }
+
+    /**
+     * Solves on the least-loaded live worker. The result has no phase split, since the
+     * binary protocol does not carry one. Fails with
+     * RejectedExecutionException when no worker is up or the chosen one is full, and with
+     * TimeoutException when the worker does not answer in time; that worker is then restarted.
+     * Cancelling the returned future stops the search on the worker.
+     */
+    public CompletableFuture<SolveResult> solve(String facelets, int maxDepth, int timeoutMs) {
+        if (!Search.hasNineOfEachColor(facelets))
+            return CompletableFuture.completedFuture(SolveResult.failed(SolveResult.Status.BAD_COLORS));
+        CubieCube cc = new FaceCube(facelets).toCubieCube();
+        int s = cc.verify();
+        if (s != 0) return CompletableFuture.completedFuture(SolveResult.failed(SolveResult.Status.of(-s)));
+        CompletableFuture<SolveResult> result = new CompletableFuture<>();
+        dispatch(cc, maxDepth, timeoutMs, result, true);
+        return result;
+    }
+
+    private void dispatch(CubieCube cc, int maxDepth, int timeoutMs, CompletableFuture<SolveResult> result, boolean retry) {
+        Slot slot = leastLoaded();
+        BinarySolveClient client = slot == null ? null : slot.client;
+        if (client == null) {
+            result.completeExceptionally(new RejectedExecutionException("No solver worker available"));
+            return;
+        }
+        slot.outstanding.incrementAndGet();
+        CompletableFuture<BinaryProtocol.Response> reply;
+        try {
+            reply = client.send(cc, maxDepth, timeoutMs);
+            client.flush();
+        } catch (IOException e) {
+            reply = CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<BinaryProtocol.Response> sent = reply;
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) sent.cancel(false);
+        });
+        reply.orTimeout(timeoutMs + REPLY_MARGIN_MS, TimeUnit.MILLISECONDS).whenComplete((r, e) -> {
+            slot.outstanding.decrementAndGet();
+            // Cancelled by the caller: there is nobody left to answer or retry for.
+            if (result.isDone()) return;
+            if (e instanceof TimeoutException) {
+                // Retrying would only wait the whole deadline again.
+                slot.kill(client, "did not answer within " + (timeoutMs + REPLY_MARGIN_MS) + " ms");
+                result.completeExceptionally(e);
+            } else if (e != null) {
+                if (retry) dispatch(cc, maxDepth, timeoutMs, result, false);
+                else result.completeExceptionally(e);
+            } else if (r.status == BinaryProtocol.STATUS_OK) {
+                result.complete(SolveResult.of(r.moves));
+            } else if (r.status == BinaryProtocol.STATUS_BUSY) {
+                result.completeExceptionally(new RejectedExecutionException("Solver worker busy"));
+            } else {
+                SolveResult.Status status = SolveResult.Status.of(r.status);
+                if (status != null) result.complete(SolveResult.failed(status));
+                else result.completeExceptionally(new IOException("Solver worker answered status " + r.status));
+            }
+        });
+    }
+
+    private Slot leastLoaded() {
+        Slot best = null;
+        for (Slot s : slots) {
+            BinarySolveClient c = s.client;
+            if (c == null || c.isClosed()) continue;
+            if (best == null || s.outstanding.get() < best.outstanding.get()) best = s;
+        }
+        return best;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Slot s : slots) s.stop();
+        restarts.shutdownNow();
+    }
+
+    private final class Slot {
+        final int index;
+        final AtomicInteger outstanding = new AtomicInteger();
+        volatile Process process;
+        volatile BinarySolveClient client;
+
+        Slot(int index) {
+            this.index = index;
+        }
+
+        void launch() throws IOException {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            Process p = new ProcessBuilder(java, "-Drubik.tables=" + tables,
+                    "-cp", System.getProperty("java.class.path"), "BinarySolveServer", String.valueOf(threadsPerWorker))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+            process = p;
+            try {
+                int port = readPort(p);
+                client = new BinarySolveClient("127.0.0.1", port);
+            } catch (IOException e) {
+                p.destroyForcibly();
+                throw e;
+            }
+            p.onExit().thenRun(() -> exited(p));
+        }
+
+        private void exited(Process p) {
+            if (p != process) return;
+            BinarySolveClient c = client;
+            client = null;
+            if (c != null) {
+                try {
+                    c.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (closed) return;
+            System.err.println("Solver worker " + index + " exited with " + p.exitValue() + ", restarting");
+            restarts.execute(this::launchUntilUp);
+        }
+
+        void launchUntilUp() {
+            while (!closed && client == null) {
+                try {
+                    launch();
+                } catch (IOException e) {
+                    System.err.println("Solver worker " + index + " failed to start: " + e.getMessage());
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Takes a hung worker out of rotation at once and kills it; its exit restarts the
+         * slot and fails the other requests still waiting on it.
+         */
+        void kill(BinarySolveClient hung, String reason) {
+            Process p = process;
+            if (client != hung || p == null) return;
+            client = null;
+            System.err.println("Solver worker " + index + " " + reason + ", restarting");
+            try {
+                hung.close();
+            } catch (IOException ignored) {
+            }
+            p.destroyForcibly();
+        }
+
+        void stop() {
+            Process p = process;
+            if (p != null) p.destroy();
+        }
+
+        // The worker prints "PORT n" once its tables are loaded and it is listening.
+        private int readPort(Process p) throws IOException {
+            BufferedReader out = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8));
+            CompletableFuture<String> line = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return out.readLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, restarts);
+            String first;
+            try {
+                first = line.get(START_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while starting worker");
+            } catch (ExecutionException | TimeoutException e) {
+                throw new IOException("Worker did not start", e);
+            }
+            if (first == null || !first.startsWith("PORT ")) throw new IOException("Worker did not start: " + first);
+            return Integer.parseInt(first.substring(5).trim());
+        }
+    }
+}
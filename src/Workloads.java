@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Cube inputs for {@link Benchmark} and {@link LoadGenerator}: the nets in a directory and
+ * seeded random scrambles and states, the same ones on every run.
+ */
+final class Workloads {
+    static final long SEED = 20240601L;
+    // At most 50 characters without spaces, so the parser never takes one for a facelet string.
+    private static final int RANDOM_SCRAMBLE_MOVES = 25;
+
+    private Workloads() {}
+
+    /** The *.txt nets in dir that parse, in file name order; empty if there is no such directory. */
+    static List<String> nets(Path dir) throws IOException {
+        List<String> nets = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return nets;
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.txt")) {
+            for (Path p : ds) files.add(p);
+        }
+        files.sort(null);
+        for (Path p : files) {
+            String text = Files.readString(p);
+            try {
+                CubeInputUtil.parseToFacelets(text);
+                nets.add(text);
+            } catch (IllegalArgumentException ignored) {
+                // Not a usable cube; skip it.
+            }
+        }
+        return nets;
+    }
+
+    /** Move sequences of RANDOM_SCRAMBLE_MOVES moves, never turning the same face twice in a row. */
+    static List<String> randomScrambles(int count) {
+        Random rnd = new Random(SEED);
+        String[] faces = { "U", "R", "F", "D", "L", "B" };
+        String[] powers = { "", "2", "'" };
+        List<String> scrambles = new ArrayList<>();
+        for (int n = 0; n < count; n++) {
+            StringBuilder sb = new StringBuilder();
+            int last = -1;
+            for (int k = 0; k < RANDOM_SCRAMBLE_MOVES; k++) {
+                int axis;
+                do axis = rnd.nextInt(6); while (axis == last);
+                last = axis;
+                sb.append(faces[axis]).append(powers[rnd.nextInt(3)]).append(' ');
+            }
+            scrambles.add(sb.toString().trim());
+        }
+        return scrambles;
+    }
+
+    /** Uniformly random states as facelet strings. */
+    static List<String> randomStates(int count) {
+        RandomCube rnd = new RandomCube(SEED);
+        List<String> states = new ArrayList<>();
+        for (int n = 0; n < count; n++) states.add(rnd.nextFacelets());
+        return states;
+    }
+}